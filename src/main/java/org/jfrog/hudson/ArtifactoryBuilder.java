@@ -33,6 +33,7 @@ import org.jfrog.build.client.ArtifactoryVersion;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.hudson.pipeline.docker.proxy.CertManager;
 import org.jfrog.hudson.pipeline.docker.proxy.BuildInfoProxyManager;
+import org.jfrog.hudson.pipeline.docker.proxy.ProxyServerConfig;
 import org.jfrog.hudson.util.Credentials;
 import org.jfrog.hudson.util.RepositoriesUtils;
 import org.jfrog.hudson.util.plugins.PluginsUtils;
@@ -45,8 +46,10 @@ import javax.servlet.ServletException;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Yossi Shaul
@@ -72,6 +75,13 @@ public class ArtifactoryBuilder extends GlobalConfiguration {
         private int buildInfoProxyPort;
         private String buildInfoProxyCertPublic;
         private String buildInfoProxyCertPrivate;
+        private int buildInfoProxyAcceptorThreads = ProxyServerConfig.DEFAULT_ACCEPTOR_THREADS;
+        private int buildInfoProxyClientWorkerThreads = ProxyServerConfig.DEFAULT_WORKER_THREADS;
+        private int buildInfoProxyServerWorkerThreads = ProxyServerConfig.DEFAULT_WORKER_THREADS;
+        private int buildInfoProxyIdleTimeout = ProxyServerConfig.DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
+        private int buildInfoProxyConnectTimeout;
+        private long buildInfoProxyReadThrottle;
+        private long buildInfoProxyWriteThrottle;
 
         public DescriptorImpl() {
             super(ArtifactoryBuilder.class);
@@ -196,25 +206,29 @@ public class ArtifactoryBuilder extends GlobalConfiguration {
             useCredentialsPlugin = (Boolean) o.get("useCredentialsPlugin");
             pushToBintrayEnabled = (Boolean) o.get("pushToBintrayEnabled");
 
-            try {
-                configureProxy((JSONObject) o.get("buildInfoProxyEnabled"));
-            } catch (IOException e) {
-                throw new FormException(e, e.getMessage());
-            } catch (InterruptedException e) {
-                throw new FormException(e, e.getMessage());
-            }
-
+            // The proxy decrypts the traffic to the configured servers, so they are bound before configuring it
+            Set<String> previousHosts = new HashSet<String>(BuildInfoProxyManager.getArtifactoryHosts());
             Object servers = o.get("artifactoryServer");    // an array or single object
             if (!JSONNull.getInstance().equals(servers)) {
                 artifactoryServers = req.bindJSONToList(ArtifactoryServer.class, servers);
             } else {
                 artifactoryServers = null;
             }
+            boolean hostsChanged = !previousHosts.equals(new HashSet<String>(BuildInfoProxyManager.getArtifactoryHosts()));
+
+            try {
+                configureProxy((JSONObject) o.get("buildInfoProxyEnabled"), hostsChanged);
+            } catch (IOException e) {
+                throw new FormException(e, e.getMessage());
+            } catch (InterruptedException e) {
+                throw new FormException(e, e.getMessage());
+            }
             save();
             return super.configure(req, o) && !isServerConfigurationError();
         }
 
-        private synchronized void configureProxy(JSONObject proxyConfig) throws IOException, InterruptedException {
+        private synchronized void configureProxy(JSONObject proxyConfig, boolean hostsChanged)
+                throws IOException, InterruptedException {
             if (proxyConfig == null) {
                 BuildInfoProxyManager.stopAll();
                 buildInfoProxyEnabled = false;
@@ -222,11 +236,36 @@ public class ArtifactoryBuilder extends GlobalConfiguration {
             }
 
             int portFromForm = Integer.parseInt(proxyConfig.get("buildInfoProxyPort").toString());
-            if (!buildInfoProxyEnabled || portFromForm != buildInfoProxyPort) {
-                BuildInfoProxyManager.startAll(portFromForm);
+            ProxyServerConfig currentServerConfig = getBuildInfoProxyServerConfig();
+            buildInfoProxyAcceptorThreads = getInt(proxyConfig, "buildInfoProxyAcceptorThreads", ProxyServerConfig.DEFAULT_ACCEPTOR_THREADS);
+            buildInfoProxyClientWorkerThreads = getInt(proxyConfig, "buildInfoProxyClientWorkerThreads", ProxyServerConfig.DEFAULT_WORKER_THREADS);
+            buildInfoProxyServerWorkerThreads = getInt(proxyConfig, "buildInfoProxyServerWorkerThreads", ProxyServerConfig.DEFAULT_WORKER_THREADS);
+            buildInfoProxyIdleTimeout = getInt(proxyConfig, "buildInfoProxyIdleTimeout", ProxyServerConfig.DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS);
+            buildInfoProxyConnectTimeout = getInt(proxyConfig, "buildInfoProxyConnectTimeout", 0);
+            buildInfoProxyReadThrottle = getInt(proxyConfig, "buildInfoProxyReadThrottle", 0) * 1024L;
+            buildInfoProxyWriteThrottle = getInt(proxyConfig, "buildInfoProxyWriteThrottle", 0) * 1024L;
+            ProxyServerConfig serverConfig = getBuildInfoProxyServerConfig();
+            if (!buildInfoProxyEnabled || portFromForm != buildInfoProxyPort || !serverConfig.equals(currentServerConfig)) {
+                BuildInfoProxyManager.startAll(portFromForm, serverConfig);
                 buildInfoProxyEnabled = true;
                 buildInfoProxyPort = portFromForm;
+            } else if (hostsChanged) {
+                BuildInfoProxyManager.updateArtifactoryHostsAll();
+            }
+        }
+
+        private static int getInt(JSONObject json, String key, int defaultValue) {
+            String value = json.optString(key);
+            if (StringUtils.isBlank(value)) {
+                return defaultValue;
             }
+            return Math.max(0, Integer.parseInt(value.trim()));
+        }
+
+        public ProxyServerConfig getBuildInfoProxyServerConfig() {
+            return new ProxyServerConfig(Math.max(1, buildInfoProxyAcceptorThreads), Math.max(1, buildInfoProxyClientWorkerThreads),
+                    Math.max(1, buildInfoProxyServerWorkerThreads), buildInfoProxyIdleTimeout, buildInfoProxyConnectTimeout,
+                    buildInfoProxyReadThrottle, buildInfoProxyWriteThrottle);
         }
 
         private boolean isServerConfigurationError() {
@@ -296,7 +335,7 @@ public class ArtifactoryBuilder extends GlobalConfiguration {
             int port = Integer.parseInt(buildInfoProxyPort);
             CertManager.createCertificateSource(buildInfoProxyCertPublic, buildInfoProxyCertPrivate);
             try {
-                BuildInfoProxyManager.startAll(port);
+                BuildInfoProxyManager.startAll(port, getBuildInfoProxyServerConfig());
             } catch (IOException e) {
                 e.printStackTrace();
             } catch (InterruptedException e) {
@@ -318,5 +357,33 @@ public class ArtifactoryBuilder extends GlobalConfiguration {
         public int getBuildInfoProxyPort() {
             return buildInfoProxyPort;
         }
+
+        public int getBuildInfoProxyAcceptorThreads() {
+            return buildInfoProxyAcceptorThreads;
+        }
+
+        public int getBuildInfoProxyClientWorkerThreads() {
+            return buildInfoProxyClientWorkerThreads;
+        }
+
+        public int getBuildInfoProxyServerWorkerThreads() {
+            return buildInfoProxyServerWorkerThreads;
+        }
+
+        public int getBuildInfoProxyIdleTimeout() {
+            return buildInfoProxyIdleTimeout;
+        }
+
+        public int getBuildInfoProxyConnectTimeout() {
+            return buildInfoProxyConnectTimeout;
+        }
+
+        public long getBuildInfoProxyReadThrottle() {
+            return buildInfoProxyReadThrottle / 1024;
+        }
+
+        public long getBuildInfoProxyWriteThrottle() {
+            return buildInfoProxyWriteThrottle / 1024;
+        }
     }
 }
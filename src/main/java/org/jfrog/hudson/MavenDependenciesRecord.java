@@ -16,23 +16,46 @@
 
 package org.jfrog.hudson;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import hudson.maven.MavenBuild;
 import hudson.model.Action;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.hudson.pipeline.Utils;
 
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Records dependencies (including transitive) of a maven module.
+ * The dependencies are kept in a gzip compressed JSON lines side file in the module build directory rather than
+ * in the build.xml, and are loaded only when needed.
  *
  * @author Yossi Shaul
  */
 public class MavenDependenciesRecord implements Action {
+    private static final Logger logger = Logger.getLogger(MavenDependenciesRecord.class.getName());
+    private static final String DEPENDENCIES_FILE = "artifactory" + File.separator + "dependencies.jsonl.gz";
+
     private final MavenBuild build;
-    private final Set<MavenDependency> dependencies;
+    /**
+     * Only set in records persisted in the build.xml by older versions.
+     */
+    private Set<MavenDependency> dependencies;
+    private transient SoftReference<Set<MavenDependency>> loadedDependencies;
 
-    public MavenDependenciesRecord(MavenBuild build, Set<MavenDependency> dependencies) {
+    public MavenDependenciesRecord(MavenBuild build, Set<MavenDependency> dependencies) throws IOException {
         this.build = build;
-        this.dependencies = dependencies;
+        store(dependencies);
+        this.loadedDependencies = new SoftReference<Set<MavenDependency>>(dependencies);
     }
 
     public String getIconFileName() {
@@ -47,7 +70,91 @@ public class MavenDependenciesRecord implements Action {
         return null;
     }
 
-    public Set<MavenDependency> getDependencies() {
-        return dependencies;
+    /**
+     * @return The recorded dependencies, empty if they were already deleted.
+     */
+    public synchronized Set<MavenDependency> getDependencies() {
+        if (dependencies != null) {
+            return dependencies;
+        }
+        Set<MavenDependency> result = loadedDependencies != null ? loadedDependencies.get() : null;
+        if (result == null) {
+            try {
+                result = load();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed reading the dependencies of " + build, e);
+                result = Collections.emptySet();
+            }
+            loadedDependencies = new SoftReference<Set<MavenDependency>>(result);
+        }
+        return result;
+    }
+
+    /**
+     * Delete the recorded dependencies once they were published.
+     */
+    public synchronized void delete() {
+        dependencies = null;
+        loadedDependencies = null;
+        File dependenciesFile = getDependenciesFile();
+        if (dependenciesFile.exists() && !dependenciesFile.delete()) {
+            dependenciesFile.deleteOnExit();
+        }
+    }
+
+    private File getDependenciesFile() {
+        return new File(build.getRootDir(), DEPENDENCIES_FILE);
+    }
+
+    private void store(Set<MavenDependency> dependencies) throws IOException {
+        File dependenciesFile = getDependenciesFile();
+        File parent = dependenciesFile.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create dependencies directory: " + parent.getPath());
+        }
+        ObjectMapper mapper = Utils.mapper();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(dependenciesFile)), "UTF-8"));
+        try {
+            for (MavenDependency dependency : dependencies) {
+                writer.write(mapper.writeValueAsString(new String[]{dependency.getId(), dependency.getGroupId(),
+                        dependency.getArtifactId(), dependency.getVersion(), dependency.getType(),
+                        dependency.getScope(), dependency.getFileName(), dependency.getFilePath()}));
+                writer.write('\n');
+            }
+            writer.close();
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    private Set<MavenDependency> load() throws IOException {
+        Set<MavenDependency> result = new HashSet<MavenDependency>();
+        File dependenciesFile = getDependenciesFile();
+        if (!dependenciesFile.exists()) {
+            return result;
+        }
+        ObjectMapper mapper = Utils.mapper();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(dependenciesFile))), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                JsonNode fields = mapper.readTree(line);
+                result.add(new MavenDependency(text(fields, 0), text(fields, 1), text(fields, 2), text(fields, 3),
+                        text(fields, 4), text(fields, 5), text(fields, 6), text(fields, 7)));
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return result;
+    }
+
+    private static String text(JsonNode fields, int index) {
+        JsonNode field = fields.get(index);
+        return field == null || field.isNull() ? null : field.asText().intern();
     }
 }
@@ -33,6 +33,7 @@ public class MavenDependency implements Serializable {
     private String type;
     private String scope;
     private String fileName;
+    private String filePath;
 
     public MavenDependency(Artifact artifact) {
         id = artifact.getId() != null ? artifact.getId().intern() : null;
@@ -41,9 +42,22 @@ public class MavenDependency implements Serializable {
         version = artifact.getVersion() != null ? artifact.getVersion().intern() : null;
         scope = artifact.getScope() != null ? artifact.getScope().intern() : null;
         fileName = artifact.getFile() != null ? artifact.getFile().getName().intern() : null;
+        filePath = artifact.getFile() != null ? artifact.getFile().getAbsolutePath().intern() : null;
         type = artifact.getType() != null ? artifact.getType().intern() : null;
     }
 
+    MavenDependency(String id, String groupId, String artifactId, String version, String type, String scope,
+                    String fileName, String filePath) {
+        this.id = id;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.type = type;
+        this.scope = scope;
+        this.fileName = fileName;
+        this.filePath = filePath;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -114,4 +128,12 @@ public class MavenDependency implements Serializable {
     public String getFileName() {
         return fileName;
     }
+
+    /**
+     * @return The absolute path of the dependency file on the node the build ran on, null for dependencies
+     * recorded by older versions.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
 }
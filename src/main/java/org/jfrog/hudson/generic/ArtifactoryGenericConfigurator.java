@@ -4,8 +4,12 @@ import com.google.common.collect.Lists;
 import com.tikal.jenkins.plugins.multijob.MultiJobProject;
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixConfiguration;
 import hudson.matrix.MatrixProject;
+import hudson.matrix.MatrixRun;
 import hudson.model.*;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.BuildWrapperDescriptor;
@@ -24,6 +28,7 @@ import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenc
 import org.jfrog.hudson.*;
 import org.jfrog.hudson.BintrayPublish.BintrayPublishAction;
 import org.jfrog.hudson.action.ActionableHelper;
+import org.jfrog.hudson.pipeline.types.buildInfo.BuildInfoStore;
 import org.jfrog.hudson.release.UnifiedPromoteBuildAction;
 import org.jfrog.hudson.util.*;
 import org.jfrog.hudson.util.converters.DeployerResolverOverriderConverter;
@@ -35,10 +40,13 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Freestyle Generic configurator
@@ -46,7 +54,7 @@ import java.util.List;
  * @author Shay Yaakov
  */
 public class ArtifactoryGenericConfigurator extends BuildWrapper implements DeployerOverrider, ResolverOverrider,
-        BuildInfoAwareConfigurator, MultiConfigurationAware {
+        BuildInfoAwareConfigurator, MultiConfigurationAware, MatrixAggregatable {
 
     private final ServerDetails details;
     private final ServerDetails resolverDetails;
@@ -70,6 +78,10 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
     private transient List<BuildDependency> buildDependencies;
     private String artifactoryCombinationFilter;
     private boolean multiConfProject;
+    /**
+     * Publish a single build info for all the configurations of a matrix build
+     */
+    private boolean aggregateMatrixBuildInfo;
 
     /**
      * @deprecated: Use org.jfrog.hudson.generic.ArtifactoryGenericConfigurator#getDeployerCredentials()()
@@ -92,7 +104,8 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
                                           boolean discardOldBuilds,
                                           boolean discardBuildArtifacts,
                                           boolean multiConfProject,
-                                          String artifactoryCombinationFilter) {
+                                          String artifactoryCombinationFilter,
+                                          boolean aggregateMatrixBuildInfo) {
         this.details = details;
         this.resolverDetails = resolverDetails;
         this.deployerCredentialsConfig = deployerCredentialsConfig;
@@ -110,6 +123,7 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
         this.discardBuildArtifacts = discardBuildArtifacts;
         this.multiConfProject = multiConfProject;
         this.artifactoryCombinationFilter = artifactoryCombinationFilter;
+        this.aggregateMatrixBuildInfo = aggregateMatrixBuildInfo;
     }
 
     public String getArtifactoryName() {
@@ -271,6 +285,10 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
         return multiConfProject;
     }
 
+    public boolean isAggregateMatrixBuildInfo() {
+        return aggregateMatrixBuildInfo;
+    }
+
     public ArtifactoryServer getArtifactoryServer() {
         return RepositoriesUtils.getArtifactoryServer(getArtifactoryName(), getDescriptor().getArtifactoryServers());
     }
@@ -347,63 +365,181 @@ public class ArtifactoryGenericConfigurator extends BuildWrapper implements Depl
             @Override
             public boolean tearDown(AbstractBuild build, BuildListener listener)
                     throws IOException, InterruptedException {
-                Result result = build.getResult();
-                if (result != null && result.isWorseThan(Result.SUCCESS)) {
-                    return true;    // build failed. Don't publish
+                return deployArtifactsAndBuildInfo(build, listener);
+            }
+        };
+    }
+
+    private boolean deployArtifactsAndBuildInfo(AbstractBuild build, BuildListener listener) {
+        Result result = build.getResult();
+        if (result != null && result.isWorseThan(Result.SUCCESS)) {
+            return true;    // build failed. Don't publish
+        }
+
+        ArtifactoryServer server = getArtifactoryServer();
+        CredentialsConfig preferredDeployer = CredentialManager.getPreferredDeployer(ArtifactoryGenericConfigurator.this, server);
+        ArtifactoryBuildInfoClient client = server.createArtifactoryClient(preferredDeployer.provideUsername(build.getProject()),
+                preferredDeployer.providePassword(build.getProject()), server.createProxyConfiguration(Jenkins.getInstance().proxy));
+        try {
+            boolean isFiltered = false;
+            if (isMultiConfProject(build)) {
+                if (multiConfProject && StringUtils.isBlank(getArtifactoryCombinationFilter())) {
+                    String error = "The field \"Combination Matches\" is empty, but is defined as mandatory!";
+                    listener.getLogger().println(error);
+                    build.setResult(Result.FAILURE);
+                    throw new IllegalArgumentException(error);
                 }
+                isFiltered = MultiConfigurationUtils.isfiltrated(build, getArtifactoryCombinationFilter());
+            }
 
-                ArtifactoryServer server = getArtifactoryServer();
-                CredentialsConfig preferredDeployer = CredentialManager.getPreferredDeployer(ArtifactoryGenericConfigurator.this, server);
-                ArtifactoryBuildInfoClient client = server.createArtifactoryClient(preferredDeployer.provideUsername(build.getProject()),
-                        preferredDeployer.providePassword(build.getProject()), server.createProxyConfiguration(Jenkins.getInstance().proxy));
-                try {
-                    boolean isFiltered = false;
-                    if (isMultiConfProject(build)) {
-                        if (multiConfProject && StringUtils.isBlank(getArtifactoryCombinationFilter())) {
-                            String error = "The field \"Combination Matches\" is empty, but is defined as mandatory!";
-                            listener.getLogger().println(error);
-                            build.setResult(Result.FAILURE);
-                            throw new IllegalArgumentException(error);
-                        }
-                        isFiltered = MultiConfigurationUtils.isfiltrated(build, getArtifactoryCombinationFilter());
+            if (!isFiltered) {
+                GenericArtifactsDeployer artifactsDeployer = new GenericArtifactsDeployer(build,
+                        ArtifactoryGenericConfigurator.this, listener, preferredDeployer);
+                artifactsDeployer.deploy();
+
+                List<Artifact> deployedArtifacts = artifactsDeployer.getDeployedArtifacts();
+                if (deployBuildInfo) {
+                    if (isAggregatedMatrixBuild(build)) {
+                        // the build info of all the configurations is published by the matrix build aggregator
+                        BuildInfoStore store = getMatrixBuildInfoStore(((MatrixRun) build).getParentBuild());
+                        store.appendModules(Lists.newArrayList(
+                                GenericBuildInfoDeployer.createModule(build, deployedArtifacts, publishedDependencies)));
+                        store.appendBuildDependencies(buildDependencies);
+                        return true;
                     }
+                    new GenericBuildInfoDeployer(ArtifactoryGenericConfigurator.this, client, build,
+                            listener, deployedArtifacts, buildDependencies, publishedDependencies).deploy();
+                    addBuildInfoActions(build);
+                }
+            }
 
-                    if (!isFiltered) {
-                        GenericArtifactsDeployer artifactsDeployer = new GenericArtifactsDeployer(build,
-                                ArtifactoryGenericConfigurator.this, listener, preferredDeployer);
-                        artifactsDeployer.deploy();
-
-                        List<Artifact> deployedArtifacts = artifactsDeployer.getDeployedArtifacts();
-                        if (deployBuildInfo) {
-                            new GenericBuildInfoDeployer(ArtifactoryGenericConfigurator.this, client, build,
-                                    listener, deployedArtifacts, buildDependencies, publishedDependencies).deploy();
-                            // add the result action (prefer always the same index)
-                            build.getActions().add(0, new BuildInfoResultAction(getArtifactoryUrl(), build));
-                            build.getActions().add(new UnifiedPromoteBuildAction<ArtifactoryGenericConfigurator>(build,
-                                    ArtifactoryGenericConfigurator.this));
-                            // Checks if Push to Bintray is disabled.
-                            if (PluginsUtils.isPushToBintrayEnabled()){
-                                build.getActions().add(new BintrayPublishAction<ArtifactoryGenericConfigurator>(build,
-                                        ArtifactoryGenericConfigurator.this));
-                            }
-
-                        }
-                    }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace(listener.error(e.getMessage()));
+        } finally {
+            client.shutdown();
+        }
 
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace(listener.error(e.getMessage()));
-                } finally {
-                    client.shutdown();
-                }
+        // failed
+        build.setResult(Result.FAILURE);
+        return true;
+    }
 
-                // failed
-                build.setResult(Result.FAILURE);
+    /**
+     * Publishes one build info for all the configurations of the matrix build, once they all completed.
+     */
+    public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+        if (!deployBuildInfo || !aggregateMatrixBuildInfo) {
+            return null;
+        }
+        return new MatrixAggregator(build, launcher, listener) {
+            // The matrix build result is only set once the aggregators are done, so the configurations are tracked
+            private Result configurationsResult = Result.SUCCESS;
+
+            @Override
+            public boolean endRun(MatrixRun run) throws InterruptedException, IOException {
+                if (run.getResult() != null) {
+                    configurationsResult = configurationsResult.combine(run.getResult());
+                }
                 return true;
             }
+
+            @Override
+            public boolean endBuild() throws InterruptedException, IOException {
+                return publishMatrixBuildInfo(build, listener, configurationsResult);
+            }
         };
     }
 
+    /**
+     * Publishes the build info of all the configurations of the matrix build, made of the parts they appended to the
+     * matrix build side file.
+     *
+     * @return false if the build info could not be published, which fails the matrix build.
+     */
+    private boolean publishMatrixBuildInfo(MatrixBuild matrixBuild, BuildListener listener,
+                                           Result configurationsResult) {
+        BuildInfoStore store = getMatrixBuildInfoStore(matrixBuild);
+        try {
+            Result result = matrixBuild.getResult();
+            if (configurationsResult.isWorseThan(Result.SUCCESS) ||
+                    (result != null && result.isWorseThan(Result.SUCCESS))) {
+                return true;    // build failed. Don't publish
+            }
+            BuildInfoStore.Contents contents = store.load();
+            if (contents.getModules().isEmpty()) {
+                return true;
+            }
+            ArtifactoryServer server = getArtifactoryServer();
+            CredentialsConfig preferredDeployer =
+                    CredentialManager.getPreferredDeployer(ArtifactoryGenericConfigurator.this, server);
+            ArtifactoryBuildInfoClient client = server.createArtifactoryClient(
+                    preferredDeployer.provideUsername(matrixBuild.getProject()),
+                    preferredDeployer.providePassword(matrixBuild.getProject()),
+                    server.createProxyConfiguration(Jenkins.getInstance().proxy));
+            try {
+                listener.getLogger().println("Publishing the build info of " + contents.getModules().size() +
+                        " configurations of " + matrixBuild.getFullDisplayName());
+                new GenericBuildInfoDeployer(ArtifactoryGenericConfigurator.this, client, matrixBuild, listener,
+                        contents.getModules(), distinctBuildDependencies(contents.getBuildDependencies())).deploy();
+                addBuildInfoActions(matrixBuild);
+                return true;
+            } finally {
+                client.shutdown();
+            }
+        } catch (Exception e) {
+            e.printStackTrace(listener.error("Failed publishing the matrix build info: " + e.getMessage()));
+            return false;
+        } finally {
+            store.delete();
+        }
+    }
+
+    /**
+     * The configurations resolve the same build dependencies, each of them is published once.
+     */
+    private static List<BuildDependency> distinctBuildDependencies(List<BuildDependency> buildDependencies) {
+        Map<String, BuildDependency> distinct = new LinkedHashMap<String, BuildDependency>();
+        for (BuildDependency buildDependency : buildDependencies) {
+            String key = buildDependency.getName() + ":" + buildDependency.getNumber();
+            if (!distinct.containsKey(key)) {
+                distinct.put(key, buildDependency);
+            }
+        }
+        return Lists.newArrayList(distinct.values());
+    }
+
+    private void addBuildInfoActions(AbstractBuild build) {
+        // add the result action (prefer always the same index)
+        build.getActions().add(0, new BuildInfoResultAction(getArtifactoryUrl(), build));
+        build.getActions().add(new UnifiedPromoteBuildAction<ArtifactoryGenericConfigurator>(build,
+                ArtifactoryGenericConfigurator.this));
+        // Checks if Push to Bintray is disabled.
+        if (PluginsUtils.isPushToBintrayEnabled()) {
+            build.getActions().add(new BintrayPublishAction<ArtifactoryGenericConfigurator>(build,
+                    ArtifactoryGenericConfigurator.this));
+        }
+    }
+
+    /**
+     * @return The build whose name and number the build info of the given build is published under.
+     */
+    Run getBuildInfoBuild(Run build) {
+        if (isAggregatedMatrixBuild(build)) {
+            return ((MatrixRun) build).getParentBuild();
+        }
+        return build;
+    }
+
+    private static BuildInfoStore getMatrixBuildInfoStore(MatrixBuild matrixBuild) {
+        File storeDir = new File(matrixBuild.getRootDir(), "artifactory");
+        return new BuildInfoStore(new File(storeDir, "matrixBuildInfo.jsonl.gz").getPath());
+    }
+
+    private boolean isAggregatedMatrixBuild(Run build) {
+        return deployBuildInfo && aggregateMatrixBuildInfo && build instanceof MatrixRun;
+    }
+
     private boolean isMultiConfProject(AbstractBuild build) {
         return (build.getProject().getClass().equals(MatrixConfiguration.class));
     }
@@ -94,10 +94,12 @@ public class GenericArtifactsDeployer {
     private ArrayListMultimap<String, String> getbuildPropertiesMap() {
         ArrayListMultimap<String, String> properties = ArrayListMultimap.create();
 
-        properties.put("build.name", BuildUniqueIdentifierHelper.getBuildName(build));
-        properties.put("build.number", BuildUniqueIdentifierHelper.getBuildNumber(build));
-        properties.put("build.timestamp", build.getTimestamp().getTime().getTime() + "");
-        Cause.UpstreamCause parent = ActionableHelper.getUpstreamCause(build);
+        // Matrix configurations publishing a single build info are tagged with the matrix build
+        Run buildInfoBuild = configurator.getBuildInfoBuild(build);
+        properties.put("build.name", BuildUniqueIdentifierHelper.getBuildName(buildInfoBuild));
+        properties.put("build.number", BuildUniqueIdentifierHelper.getBuildNumber(buildInfoBuild));
+        properties.put("build.timestamp", buildInfoBuild.getTimestamp().getTime().getTime() + "");
+        Cause.UpstreamCause parent = ActionableHelper.getUpstreamCause(buildInfoBuild);
         if (parent != null) {
             properties.put("build.parentName", ExtractorUtils.sanitizeBuildName(parent.getUpstreamProject()));
             properties.put("build.parentNumber", parent.getUpstreamBuild() + "");
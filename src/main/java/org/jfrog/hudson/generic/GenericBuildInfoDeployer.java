@@ -23,6 +23,7 @@ import org.jfrog.build.api.Artifact;
 import org.jfrog.build.api.Build;
 import org.jfrog.build.api.BuildType;
 import org.jfrog.build.api.Dependency;
+import org.jfrog.build.api.Module;
 import org.jfrog.build.api.builder.ModuleBuilder;
 import org.jfrog.build.api.dependency.BuildDependency;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
@@ -52,7 +53,22 @@ public class GenericBuildInfoDeployer extends AbstractBuildInfoDeployer {
         this.configurator = configurator;
         this.build = build;
         this.buildInfo = createBuildInfo("Generic", "Generic", BuildType.GENERIC);
-        createDeployDetailsAndAddToBuildInfo(deployedArtifacts, publishedDependencies);
+        buildInfo.setModules(Lists.newArrayList(createModule(build, deployedArtifacts, publishedDependencies)));
+        buildInfo.setBuildDependencies(buildDependencies);
+    }
+
+    /**
+     * Build info made of modules gathered from several builds, such as the configurations of a matrix build.
+     */
+    public GenericBuildInfoDeployer(ArtifactoryGenericConfigurator configurator, ArtifactoryBuildInfoClient client,
+                                    Run build, TaskListener listener, List<Module> modules,
+                                    List<BuildDependency> buildDependencies)
+            throws IOException, NoSuchAlgorithmException, InterruptedException {
+        super(configurator, build, listener, client);
+        this.configurator = configurator;
+        this.build = build;
+        this.buildInfo = createBuildInfo("Generic", "Generic", BuildType.GENERIC);
+        buildInfo.setModules(modules);
         buildInfo.setBuildDependencies(buildDependencies);
     }
 
@@ -62,13 +78,16 @@ public class GenericBuildInfoDeployer extends AbstractBuildInfoDeployer {
         client.sendBuildInfo(buildInfo);
     }
 
-    private void createDeployDetailsAndAddToBuildInfo(List<Artifact> deployedArtifacts,
-                                                      List<Dependency> publishedDependencies) throws IOException, NoSuchAlgorithmException {
+    /**
+     * Create the build info module of the given build.
+     */
+    public static Module createModule(Run build, List<Artifact> deployedArtifacts,
+                                      List<Dependency> publishedDependencies) {
         ModuleBuilder moduleBuilder =
                 new ModuleBuilder().id(
                         ExtractorUtils.sanitizeBuildName(build.getParent().getDisplayName()) + ":" + build.getNumber())
                         .artifacts(deployedArtifacts);
         moduleBuilder.dependencies(publishedDependencies);
-        buildInfo.setModules(Lists.newArrayList(moduleBuilder.build()));
+        return moduleBuilder.build();
     }
 }
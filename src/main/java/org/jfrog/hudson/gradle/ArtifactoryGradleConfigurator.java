@@ -492,6 +492,23 @@ public class ArtifactoryGradleConfigurator extends BuildWrapper implements Deplo
                         setTargetsField(gradleBuild, "tasks", tasks);
                     }
                 }
+
+                @Override
+                public void tearDown() {
+                    // Restore the original switches and tasks of this build (we overrided their
+                    // values in the setUp stage):
+                    ConcurrentJobsHelper.ConcurrentBuild concurrentBuild = ConcurrentJobsHelper.getConcurrentBuild(build);
+                    String switches = concurrentBuild.getParam("switches");
+                    String tasks = concurrentBuild.getParam("tasks");
+                    if (switches == null || tasks == null) {
+                        // The setUp stage failed before overriding them
+                        return;
+                    }
+                    switches = switches.replace("${ARTIFACTORY_INIT_SCRIPT}", "");
+                    tasks = tasks.replace("${ARTIFACTORY_TASKS}", "");
+                    setTargetsField(gradleBuild, "switches", switches);
+                    setTargetsField(gradleBuild, "tasks", tasks);
+                }
             };
         } else {
             log.println("[Warning] No Gradle build configured");
@@ -503,12 +520,10 @@ public class ArtifactoryGradleConfigurator extends BuildWrapper implements Deplo
             @Override
             public void buildEnvVars(Map<String, String> env) {
                 GradleInitScriptWriter writer = new GradleInitScriptWriter(build, launcher);
-                FilePath workspace = build.getWorkspace();
                 FilePath initScript;
                 String initScriptPath;
                 try {
-                    initScript = workspace.createTextTempFile("init-artifactory", "gradle",
-                            writer.generateInitScript(), false);
+                    initScript = writer.getInitScript();
                     initScriptPath = initScript.getRemote();
                     initScriptPath = initScriptPath.replace('\\', '/');
                     env.put("ARTIFACTORY_INIT_SCRIPT", " --init-script " + initScriptPath);
@@ -564,20 +579,8 @@ public class ArtifactoryGradleConfigurator extends BuildWrapper implements Deplo
                     // inside its tearDown() method is invoked by only one job in this build
                     // (matrix project builds include more that one job) and that this
                     // job is the last one running.
-                    new ConcurrentJobsHelper.ConcurrentBuildTearDownSync(build, result) {
-                        @Override
-                        public void tearDown() {
-                            // Restore the original switches and tasks of this build (we overrided their
-                            // values in the setUp stage):
-                            ConcurrentJobsHelper.ConcurrentBuild concurrentBuild = ConcurrentJobsHelper.getConcurrentBuild(build);
-                            String switches = concurrentBuild.getParam("switches");
-                            String tasks = concurrentBuild.getParam("tasks");
-                            switches = switches.replace("${ARTIFACTORY_INIT_SCRIPT}", "");
-                            tasks = tasks.replace("${ARTIFACTORY_TASKS}", "");
-                            setTargetsField(gradleBuild, "switches", switches);
-                            setTargetsField(gradleBuild, "tasks", tasks);
-                        }
-                    };
+                    // The original switches and tasks are restored by the tear down registered in the setUp stage.
+                    new ConcurrentJobsHelper.ConcurrentBuildTearDownSync(build, result);
                 }
                 if (result != null && result.isBetterOrEqualTo(Result.SUCCESS)) {
                     if (isDeployBuildInfo()) {
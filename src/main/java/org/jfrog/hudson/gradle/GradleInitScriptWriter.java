@@ -17,6 +17,7 @@
 package org.jfrog.hudson.gradle;
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
@@ -37,6 +38,8 @@ import java.net.URISyntaxException;
  * @author Tomer Cohen
  */
 public class GradleInitScriptWriter {
+    // The template is bundled with the plugin, so it is read once
+    private static volatile String template;
     private Run build;
     private Launcher launcher;
 
@@ -56,15 +59,64 @@ public class GradleInitScriptWriter {
      * @return The generated script.
      */
     public String generateInitScript() throws URISyntaxException, IOException, InterruptedException {
-        StringBuilder initScript = new StringBuilder();
-        InputStream templateStream = getClass().getResourceAsStream("/initscripttemplate.gradle");
-        String templateAsString = IOUtils.toString(templateStream, Charsets.UTF_8.name());
+        return generateInitScript(getDependencyDirectory());
+    }
+
+    /**
+     * Returns the init script on the node the build runs on.
+     * Generated scripts are kept in the plugin dependencies directory of the node, named by their content hash,
+     * so builds of the same plugin version reuse the script already written on the node.
+     *
+     * @return The init script file on the build node.
+     */
+    public FilePath getInitScript() throws URISyntaxException, IOException, InterruptedException {
+        FilePath dependencyDir = getDependencyDirectory();
+        String script = generateInitScript(dependencyDir);
+        String scriptHash = Hashing.sha1().hashString(script, Charsets.UTF_8).toString();
+        FilePath initScript = new FilePath(dependencyDir, "init-artifactory-" + scriptHash + ".gradle");
+        if (PluginDependencyHelper.isProvisioned(initScript)) {
+            return initScript;
+        }
+        if (!initScript.exists()) {
+            // Write to a temp file first, so concurrent builds never read a partially written script
+            FilePath tempScript = dependencyDir.createTextTempFile("init-artifactory", ".tmp", script, false);
+            try {
+                tempScript.renameTo(initScript);
+            } catch (IOException e) {
+                // Another build may have renamed the same script first
+                if (!initScript.exists()) {
+                    throw e;
+                }
+            } finally {
+                if (tempScript.exists()) {
+                    tempScript.delete();
+                }
+            }
+        }
+        PluginDependencyHelper.markProvisioned(initScript);
+        return initScript;
+    }
+
+    private FilePath getDependencyDirectory() throws IOException, InterruptedException {
         File localGradleExtractorJar = Which.jarFile(getClass().getResource("/initscripttemplate.gradle"));
-        FilePath dependencyDir = PluginDependencyHelper.getActualDependencyDirectory(localGradleExtractorJar, Utils.getNode(launcher).getRootPath());
+        return PluginDependencyHelper.getActualDependencyDirectory(localGradleExtractorJar, Utils.getNode(launcher).getRootPath());
+    }
+
+    private String generateInitScript(FilePath dependencyDir) throws IOException {
         String absoluteDependencyDirPath = dependencyDir.getRemote();
         absoluteDependencyDirPath = absoluteDependencyDirPath.replace("\\", "/");
-        String str = templateAsString.replace("${pluginLibDir}", absoluteDependencyDirPath);
-        initScript.append(str);
-        return initScript.toString();
+        return getTemplate().replace("${pluginLibDir}", absoluteDependencyDirPath);
+    }
+
+    private static String getTemplate() throws IOException {
+        if (template == null) {
+            InputStream templateStream = GradleInitScriptWriter.class.getResourceAsStream("/initscripttemplate.gradle");
+            try {
+                template = IOUtils.toString(templateStream, Charsets.UTF_8.name());
+            } finally {
+                IOUtils.closeQuietly(templateStream);
+            }
+        }
+        return template;
     }
-}
\ No newline at end of file
+}
@@ -378,6 +378,21 @@ public class ArtifactoryIvyFreeStyleConfigurator extends BuildWrapper implements
                     // Override the targets after we stored them:
                     setTargetsField(antBuild, targets + " " + getAntArgs());
                 }
+
+                @Override
+                public void tearDown() {
+                    // Restore the original targets of this build (we overrided their
+                    // values in the setUp stage):
+                    ConcurrentJobsHelper.ConcurrentBuild concurrentBuild = ConcurrentJobsHelper.getConcurrentBuild(build);
+                    String targets = concurrentBuild.getParam("targets");
+                    if (targets == null) {
+                        // The setUp stage failed before overriding them
+                        return;
+                    }
+                    // Remove the Artifactory Plugin additional arguments, in case they are included in the targets string:
+                    targets = targets.replace(getAntArgs(), "");
+                    setTargetsField(antBuild, targets);
+                }
             };
         }
 
@@ -407,18 +422,8 @@ public class ArtifactoryIvyFreeStyleConfigurator extends BuildWrapper implements
                     // inside its tearDown() method is invoked by only one job in this build
                     // (matrix project builds include more that one job) and that this
                     // job is the last one running.
-                    new ConcurrentJobsHelper.ConcurrentBuildTearDownSync(build, result) {
-                        @Override
-                        public void tearDown() {
-                            // Restore the original targets of this build (we overrided their
-                            // values in the setUp stage):
-                            ConcurrentJobsHelper.ConcurrentBuild concurrentBuild = ConcurrentJobsHelper.getConcurrentBuild(build);
-                            String targets = concurrentBuild.getParam("targets");
-                            // Remove the Artifactory Plugin additional arguments, in case they are included in the targets string:
-                            targets = targets.replace(getAntArgs(), "");
-                            setTargetsField(antBuild, targets);
-                        }
-                    };
+                    // The original targets are restored by the tear down registered in the setUp stage.
+                    new ConcurrentJobsHelper.ConcurrentBuildTearDownSync(build, result);
                 }
 
                 if (!finalPublisherContext.isSkipBuildInfoDeploy() && (result == null ||
@@ -24,7 +24,9 @@ import hudson.maven.MavenModuleSetBuild;
 import hudson.maven.reporters.MavenArtifact;
 import hudson.maven.reporters.MavenArtifactRecord;
 import hudson.model.*;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.VersionNumber;
+import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.jfrog.build.api.BuildInfoFields;
@@ -35,9 +37,11 @@ import org.jfrog.build.extractor.clientConfiguration.PatternMatcher;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.hudson.ArtifactoryRedeployPublisher;
 import org.jfrog.hudson.ArtifactoryServer;
+import org.jfrog.hudson.CredentialsConfig;
 import org.jfrog.hudson.action.ActionableHelper;
 import org.jfrog.hudson.release.ReleaseAction;
 import org.jfrog.hudson.util.BuildUniqueIdentifierHelper;
+import org.jfrog.hudson.util.CredentialManager;
 import org.jfrog.hudson.util.ExtractorUtils;
 import org.jfrog.hudson.util.IncludesExcludes;
 import org.jfrog.hudson.util.MavenVersionHelper;
@@ -46,7 +50,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -57,6 +71,10 @@ import java.util.logging.Logger;
 public class ArtifactsDeployer {
     private static final String HIGHEST_VERSION_BEFORE_ARCHIVE_FIX = "1.404";
     private static final String SHA1 = "SHA1";
+    /**
+     * Maximum number of artifacts deployed concurrently. Can be overridden by a system property on the master.
+     */
+    private static final int DEPLOY_THREADS = Integer.getInteger(ArtifactsDeployer.class.getName() + ".deployThreads", 4);
     private static Logger debuggingLogger = Logger.getLogger(ArtifactsDeployer.class.getName());
     private final ArtifactoryServer artifactoryServer;
     private final String targetReleasesRepository;
@@ -69,7 +87,9 @@ public class ArtifactsDeployer {
     private final boolean isArchiveJenkinsVersion;
     private final EnvVars env;
     private final String[] matrixParams;
-    private final AbstractBuild<?, ?> rootBuild;
+    private final String rootIdentifier;
+    private final Cause.UpstreamCause parent;
+    private final CredentialsConfig preferredDeployer;
 
     public ArtifactsDeployer(ArtifactoryRedeployPublisher artifactoryPublisher, ArtifactoryBuildInfoClient client,
                              MavenModuleSetBuild mavenModuleSetBuild, BuildListener listener)
@@ -79,6 +99,7 @@ public class ArtifactsDeployer {
         this.listener = listener;
         this.env = mavenModuleSetBuild.getEnvironment(listener);
         this.artifactoryServer = artifactoryPublisher.getArtifactoryServer();
+        this.preferredDeployer = CredentialManager.getPreferredDeployer(artifactoryPublisher, artifactoryServer);
         // release action might change the target releases repository
         ReleaseAction releaseAction = ActionableHelper.getLatestAction(mavenModuleSetBuild, ReleaseAction.class);
         if (releaseAction != null) {
@@ -103,7 +124,8 @@ public class ArtifactsDeployer {
         }
         this.matrixParams = StringUtils.split(Util.replaceMacro(artifactoryPublisher.getMatrixParams(), env), "; ");
         debuggingLogger.fine("Getting root build");
-        this.rootBuild = BuildUniqueIdentifierHelper.getRootBuild(mavenModuleSetBuild);
+        this.rootIdentifier = BuildUniqueIdentifierHelper.getRootBuildIdentifier(mavenModuleSetBuild);
+        this.parent = ActionableHelper.getUpstreamCause(mavenModuleSetBuild);
         this.isArchiveJenkinsVersion = Hudson.getVersion().isNewerThan(new VersionNumber(
                 HIGHEST_VERSION_BEFORE_ARCHIVE_FIX));
     }
@@ -112,6 +134,7 @@ public class ArtifactsDeployer {
         listener.getLogger().println("Deploying artifacts to " + artifactoryServer.getUrl());
         Map<MavenModule, MavenBuild> mavenBuildMap = mavenModuleSetBuild.getModuleLastBuilds();
 
+        BlockingQueue<ArtifactDeployment> deployments = new LinkedBlockingQueue<ArtifactDeployment>();
         for (Map.Entry<MavenModule, MavenBuild> mavenBuildEntry : mavenBuildMap.entrySet()) {
             MavenBuild mavenBuild = mavenBuildEntry.getValue();
             Result result = mavenBuild.getResult();
@@ -121,24 +144,47 @@ public class ArtifactsDeployer {
                         "Module: '" + mavenBuildEntry.getKey().getName() + "' wasn't built. Skipping.");
                 continue;
             }
-            listener.getLogger().println("Deploying artifacts of module: " + mavenBuildEntry.getKey().getName());
             MavenArtifactRecord mar = ActionableHelper.getLatestMavenArtifactRecord(mavenBuild);
-            MavenArtifact mavenArtifact = mar.mainArtifact;
-
-            // deploy main artifact
-            debuggingLogger.fine("Deploying main artifact: " + artifactToString(mavenArtifact, mavenBuild));
-            deployArtifact(mavenBuild, mavenArtifact);
+            List<MavenArtifact> artifacts = new ArrayList<MavenArtifact>();
+            // main artifact
+            artifacts.add(mar.mainArtifact);
             if (!mar.isPOM() && mar.pomArtifact != null && mar.pomArtifact != mar.mainArtifact) {
-                // deploy the pom if the main artifact is not the pom
-                debuggingLogger.fine("Deploying pom artifact: " + artifactToString(mavenArtifact, mavenBuild));
-                deployArtifact(mavenBuild, mar.pomArtifact);
+                // the pom if the main artifact is not the pom
+                artifacts.add(mar.pomArtifact);
+            }
+            // attached artifacts
+            artifacts.addAll(mar.attachedArtifacts);
+
+            ModuleDeployment module = new ModuleDeployment(mavenBuildEntry.getKey().getName(), artifacts.size());
+            for (MavenArtifact artifact : artifacts) {
+                deployments.add(new ArtifactDeployment(module, mavenBuild, artifact));
+            }
+        }
+        if (deployments.isEmpty()) {
+            return;
+        }
+
+        Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+        int threads = Math.min(DEPLOY_THREADS, deployments.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+        try {
+            for (int i = 0; i < threads; i++) {
+                // The first worker uses the publisher client, the others their own clients
+                executor.submit(new DeploymentWorker(deployments, failures, i == 0 ? client : null));
             }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
 
-            // deploy attached artifacts
-            for (MavenArtifact attachedArtifact : mar.attachedArtifacts) {
-                debuggingLogger.fine("Deploying attached artifact: " + artifactToString(mavenArtifact, mavenBuild));
-                deployArtifact(mavenBuild, attachedArtifact);
+        if (!failures.isEmpty()) {
+            synchronized (failures) {
+                for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+                    listener.error("Failed deploying '" + failure.getKey() + "': " + failure.getValue().getMessage());
+                }
             }
+            throw new IOException(failures.size() + " artifacts failed to deploy to " + artifactoryServer.getUrl());
         }
     }
 
@@ -148,16 +194,20 @@ public class ArtifactsDeployer {
                 .toString();
     }
 
-    private void deployArtifact(MavenBuild mavenBuild, MavenArtifact mavenArtifact)
+    private void deployArtifact(ArtifactoryBuildInfoClient client, ModuleDeployment module, MavenBuild mavenBuild,
+                                MavenArtifact mavenArtifact)
             throws IOException, InterruptedException, NoSuchAlgorithmException {
         String artifactPath = buildArtifactPath(mavenArtifact);
 
         if (PatternMatcher.pathConflicts(artifactPath, patterns)) {
-            listener.getLogger().println("Skipping the deployment of '" + artifactPath +
+            module.log("Skipping the deployment of '" + artifactPath +
                     "' due to the defined include-exclude patterns.");
             return;
         }
 
+        if (debuggingLogger.isLoggable(Level.FINE)) {
+            debuggingLogger.fine("Deploying artifact: " + artifactToString(mavenArtifact, mavenBuild));
+        }
         File artifactFile = getArtifactFile(mavenBuild, mavenArtifact);
         // calculate the sha1 checksum that is not given by Jenkins and add it to the deploy details
         Map<String, String> checksums = FileChecksumCalculator.calculateChecksums(artifactFile, SHA1);
@@ -170,12 +220,10 @@ public class ArtifactsDeployer {
                 .addProperty("build.number", mavenModuleSetBuild.getNumber() + "")
                 .addProperty("build.timestamp", mavenBuild.getTimestamp().getTime().getTime() + "");
 
-        String identifier = BuildUniqueIdentifierHelper.getUpstreamIdentifier(rootBuild);
-        if (StringUtils.isNotBlank(identifier)) {
-            builder.addProperty(BuildInfoFields.BUILD_ROOT, identifier);
+        if (StringUtils.isNotBlank(rootIdentifier)) {
+            builder.addProperty(BuildInfoFields.BUILD_ROOT, rootIdentifier);
         }
 
-        Cause.UpstreamCause parent = ActionableHelper.getUpstreamCause(mavenModuleSetBuild);
         if (parent != null) {
             builder.addProperty("build.parentName", ExtractorUtils.sanitizeBuildName(parent.getUpstreamProject()))
                     .addProperty("build.parentNumber", parent.getUpstreamBuild() + "");
@@ -186,7 +234,7 @@ public class ArtifactsDeployer {
         }
         addMatrixParams(builder);
         DeployDetails deployDetails = builder.build();
-        logDeploymentPath(deployDetails, artifactPath);
+        logDeploymentPath(module, deployDetails, artifactPath);
         client.deployArtifact(deployDetails);
     }
 
@@ -203,10 +251,10 @@ public class ArtifactsDeployer {
         }
     }
 
-    private void logDeploymentPath(DeployDetails deployDetails, String artifactPath) {
+    private void logDeploymentPath(ModuleDeployment module, DeployDetails deployDetails, String artifactPath) {
         String deploymentPath =
                 artifactoryServer.getUrl() + "/" + deployDetails.getTargetRepository() + "/" + artifactPath;
-        listener.getLogger().println("Deploying artifact: " + deploymentPath);
+        module.log("Deploying artifact: " + deploymentPath);
     }
 
     /**
@@ -255,4 +303,95 @@ public class ArtifactsDeployer {
             throw new RuntimeException("Unable to determine Maven version", e);
         }
     }
+
+    /**
+     * Deploys artifacts from the shared queue until it is empty.
+     */
+    private class DeploymentWorker implements Runnable {
+        private final BlockingQueue<ArtifactDeployment> deployments;
+        private final Map<String, Throwable> failures;
+        private final ArtifactoryBuildInfoClient sharedClient;
+
+        private DeploymentWorker(BlockingQueue<ArtifactDeployment> deployments, Map<String, Throwable> failures,
+                                 ArtifactoryBuildInfoClient sharedClient) {
+            this.deployments = deployments;
+            this.failures = failures;
+            this.sharedClient = sharedClient;
+        }
+
+        public void run() {
+            ArtifactoryBuildInfoClient workerClient = sharedClient;
+            if (workerClient == null) {
+                workerClient = artifactoryServer.createArtifactoryClient(
+                        preferredDeployer.provideUsername(mavenModuleSetBuild.getProject()),
+                        preferredDeployer.providePassword(mavenModuleSetBuild.getProject()),
+                        artifactoryServer.createProxyConfiguration(Jenkins.getInstance().proxy));
+            }
+            try {
+                ArtifactDeployment deployment;
+                while ((deployment = deployments.poll()) != null) {
+                    try {
+                        deployArtifact(workerClient, deployment.module, deployment.mavenBuild, deployment.artifact);
+                    } catch (Throwable e) {
+                        String artifactPath = buildArtifactPath(deployment.artifact);
+                        failures.put(artifactPath, e);
+                        deployment.module.log("Failed deploying '" + artifactPath + "': " + e.getMessage());
+                        if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    } finally {
+                        deployment.module.artifactDone();
+                    }
+                }
+            } finally {
+                if (workerClient != sharedClient) {
+                    workerClient.shutdown();
+                }
+            }
+        }
+    }
+
+    private static class ArtifactDeployment {
+        private final ModuleDeployment module;
+        private final MavenBuild mavenBuild;
+        private final MavenArtifact artifact;
+
+        private ArtifactDeployment(ModuleDeployment module, MavenBuild mavenBuild, MavenArtifact artifact) {
+            this.module = module;
+            this.mavenBuild = mavenBuild;
+            this.artifact = artifact;
+        }
+    }
+
+    /**
+     * Buffers the console output of a module, printed at once when all its artifacts are handled,
+     * so the output of modules deployed concurrently is not interleaved.
+     */
+    private class ModuleDeployment {
+        private final String name;
+        private final List<String> messages = new ArrayList<String>();
+        private int remainingArtifacts;
+
+        private ModuleDeployment(String name, int artifactsCount) {
+            this.name = name;
+            this.remainingArtifacts = artifactsCount;
+        }
+
+        private synchronized void log(String message) {
+            messages.add(message);
+        }
+
+        private synchronized void artifactDone() {
+            if (--remainingArtifacts > 0) {
+                return;
+            }
+            synchronized (listener) {
+                listener.getLogger().println("Deploying artifacts of module: " + name);
+                for (String message : messages) {
+                    listener.getLogger().println(message);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2010 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.maven2;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import hudson.FilePath;
+import hudson.maven.MavenBuild;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.Fingerprinter;
+import hudson.util.DaemonThreadFactory;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.build.api.util.FileChecksumCalculator;
+import org.jfrog.hudson.MavenDependenciesRecord;
+import org.jfrog.hudson.MavenDependency;
+import org.jfrog.hudson.action.ActionableHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checksums of the dependencies of all the modules of a maven build, built once per build.
+ * The MD5 checksums are taken from the modules fingerprints. The dependency files which the modules recorded
+ * are checksummed on the node the build ran on, in parallel and through a cache shared by the builds of the node.
+ */
+public class DependencyChecksumsIndex {
+    private static final Logger logger = Logger.getLogger(DependencyChecksumsIndex.class.getName());
+    private static final String MD5 = "MD5";
+    private static final String SHA1 = "SHA1";
+    private static final int CHECKSUM_THREADS =
+            Integer.getInteger(DependencyChecksumsIndex.class.getName() + ".checksumThreads", 4);
+    private static final int CHECKSUMS_CACHE_SIZE =
+            Integer.getInteger(DependencyChecksumsIndex.class.getName() + ".checksumsCacheSize", 50000);
+
+    /**
+     * Checksums computed on this node, by file path, size and modification time. Local repository files rarely
+     * change, so entries are reused across builds. Bounded, and entries of files no longer used expire.
+     */
+    private static final Cache<String, FileChecksums> checksumsCache = CacheBuilder.newBuilder()
+            .maximumSize(CHECKSUMS_CACHE_SIZE)
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .build();
+
+    // groupId:fileName to MD5, as recorded by the fingerprinter
+    private final Map<String, String> fingerprints;
+    // dependency file path to checksums
+    private final Map<String, FileChecksums> fileChecksums;
+
+    private DependencyChecksumsIndex(Map<String, String> fingerprints, Map<String, FileChecksums> fileChecksums) {
+        this.fingerprints = fingerprints;
+        this.fileChecksums = fileChecksums;
+    }
+
+    /**
+     * Build the index of the dependencies of the given module builds.
+     *
+     * @param mavenBuilds Module builds to index
+     * @param workspace   Workspace of the build, used to reach the node the build ran on. The SHA1 checksums
+     *                    are not calculated if null.
+     * @param listener
+     * @return
+     */
+    public static DependencyChecksumsIndex create(Collection<MavenBuild> mavenBuilds, FilePath workspace,
+                                                  TaskListener listener) {
+        Map<String, String> fingerprints = Maps.newHashMap();
+        Set<String> filePaths = Sets.newHashSet();
+        for (MavenBuild mavenBuild : mavenBuilds) {
+            Fingerprinter.FingerprintAction fingerprint = ActionableHelper.getLatestAction(
+                    mavenBuild, Fingerprinter.FingerprintAction.class);
+            if (fingerprint != null) {
+                fingerprints.putAll(fingerprint.getRecords());
+            }
+            MavenDependenciesRecord dependenciesRecord =
+                    ActionableHelper.getLatestAction(mavenBuild, MavenDependenciesRecord.class);
+            if (dependenciesRecord != null) {
+                for (MavenDependency dependency : dependenciesRecord.getDependencies()) {
+                    if (StringUtils.isNotBlank(dependency.getFilePath())) {
+                        filePaths.add(dependency.getFilePath());
+                    }
+                }
+            }
+        }
+
+        Map<String, FileChecksums> fileChecksums = new HashMap<String, FileChecksums>();
+        if (workspace != null && !filePaths.isEmpty()) {
+            try {
+                fileChecksums = workspace.act(new ChecksumsCallable(new ArrayList<String>(filePaths)));
+            } catch (Exception e) {
+                // Not fatal, the dependencies will be recorded with their fingerprints only
+                listener.getLogger().println("Failed calculating the dependencies checksums: " + e.getMessage());
+                logger.log(Level.FINE, "Failed calculating the dependencies checksums", e);
+            }
+        }
+        return new DependencyChecksumsIndex(fingerprints, fileChecksums);
+    }
+
+    public String getMd5(MavenDependency dependency) {
+        String md5 = fingerprints.get(dependency.getGroupId() + ":" + dependency.getFileName());
+        if (md5 == null) {
+            FileChecksums checksums = getChecksums(dependency);
+            md5 = checksums != null ? checksums.md5 : null;
+        }
+        return md5;
+    }
+
+    public String getSha1(MavenDependency dependency) {
+        FileChecksums checksums = getChecksums(dependency);
+        return checksums != null ? checksums.sha1 : null;
+    }
+
+    private FileChecksums getChecksums(MavenDependency dependency) {
+        if (dependency.getFilePath() == null) {
+            return null;
+        }
+        return fileChecksums.get(dependency.getFilePath());
+    }
+
+    private static class FileChecksums implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String md5;
+        private final String sha1;
+
+        private FileChecksums(String md5, String sha1) {
+            this.md5 = md5;
+            this.sha1 = sha1;
+        }
+    }
+
+    private static String getCacheKey(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    /**
+     * Calculates the checksums of the dependency files on the node the build ran on.
+     */
+    private static class ChecksumsCallable implements FilePath.FileCallable<Map<String, FileChecksums>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> filePaths;
+
+        private ChecksumsCallable(List<String> filePaths) {
+            this.filePaths = filePaths;
+        }
+
+        public Map<String, FileChecksums> invoke(File workspace, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            Map<String, FileChecksums> result = new HashMap<String, FileChecksums>();
+            Map<String, Future<FileChecksums>> futures = new HashMap<String, Future<FileChecksums>>();
+            ExecutorService executor = null;
+            try {
+                for (final String filePath : filePaths) {
+                    final File file = new File(filePath);
+                    if (!file.isFile()) {
+                        continue;
+                    }
+                    final String cacheKey = getCacheKey(file);
+                    FileChecksums cached = checksumsCache.getIfPresent(cacheKey);
+                    if (cached != null) {
+                        result.put(filePath, cached);
+                        continue;
+                    }
+                    if (executor == null) {
+                        executor = Executors.newFixedThreadPool(CHECKSUM_THREADS, new DaemonThreadFactory());
+                    }
+                    futures.put(filePath, executor.submit(new Callable<FileChecksums>() {
+                        public FileChecksums call() throws Exception {
+                            Map<String, String> checksums = FileChecksumCalculator.calculateChecksums(file, MD5, SHA1);
+                            FileChecksums fileChecksums = new FileChecksums(checksums.get(MD5), checksums.get(SHA1));
+                            // Not cached if the file changed while it was read
+                            if (cacheKey.equals(getCacheKey(file))) {
+                                checksumsCache.put(cacheKey, fileChecksums);
+                            }
+                            return fileChecksums;
+                        }
+                    }));
+                }
+                for (Map.Entry<String, Future<FileChecksums>> future : futures.entrySet()) {
+                    try {
+                        result.put(future.getKey(), future.getValue().get());
+                    } catch (ExecutionException e) {
+                        logger.log(Level.FINE, "Failed calculating the checksums of " + future.getKey(), e.getCause());
+                    }
+                }
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -25,7 +25,6 @@ import hudson.maven.reporters.MavenArtifact;
 import hudson.maven.reporters.MavenArtifactRecord;
 import hudson.model.Result;
 import hudson.model.TaskListener;
-import hudson.tasks.Fingerprinter;
 import org.jfrog.build.api.Artifact;
 import org.jfrog.build.api.Build;
 import org.jfrog.build.api.BuildType;
@@ -71,6 +70,8 @@ public class MavenBuildInfoDeployer extends AbstractBuildInfoDeployer {
 
     private void gatherModuleAndDependencyInfo(MavenModuleSetBuild mavenModulesBuild) {
         Map<MavenModule, MavenBuild> mavenBuildMap = mavenModulesBuild.getModuleLastBuilds();
+        DependencyChecksumsIndex checksumsIndex = DependencyChecksumsIndex.create(
+                mavenBuildMap.values(), mavenModulesBuild.getWorkspace(), listener);
         List<Module> modules = Lists.newArrayList();
         for (Map.Entry<MavenModule, MavenBuild> moduleBuild : mavenBuildMap.entrySet()) {
             MavenModule mavenModule = moduleBuild.getKey();
@@ -93,13 +94,14 @@ public class MavenBuildInfoDeployer extends AbstractBuildInfoDeployer {
                 moduleBuilder.addArtifact(toArtifact(attachedArtifact));
             }
 
-            addDependencies(moduleBuilder, mavenBuild);
+            addDependencies(moduleBuilder, mavenBuild, checksumsIndex);
             modules.add(moduleBuilder.build());
         }
         buildInfo.setModules(modules);
     }
 
-    private void addDependencies(ModuleBuilder moduleBuilder, MavenBuild mavenBuild) {
+    private void addDependencies(ModuleBuilder moduleBuilder, MavenBuild mavenBuild,
+                                 DependencyChecksumsIndex checksumsIndex) {
         MavenDependenciesRecord dependenciesRecord =
                 ActionableHelper.getLatestAction(mavenBuild, MavenDependenciesRecord.class);
         if (dependenciesRecord != null) {
@@ -109,11 +111,13 @@ public class MavenBuildInfoDeployer extends AbstractBuildInfoDeployer {
                         .id(dependency.getId())
                         .scopes(Sets.newHashSet(dependency.getScope()))
                         .type(dependency.getType())
-                        .md5(getMd5(dependency.getGroupId(), dependency.getFileName(), mavenBuild));
+                        .md5(checksumsIndex.getMd5(dependency))
+                        .sha1(checksumsIndex.getSha1(dependency));
                 moduleBuilder.addDependency(dependencyBuilder.build());
             }
             // delete them once used
-            build.getActions().removeAll(build.getActions(MavenDependenciesRecord.class));
+            dependenciesRecord.delete();
+            mavenBuild.getActions().removeAll(mavenBuild.getActions(MavenDependenciesRecord.class));
         }
     }
 
@@ -122,14 +126,4 @@ public class MavenBuildInfoDeployer extends AbstractBuildInfoDeployer {
                 .type(mavenArtifact.type).md5(mavenArtifact.md5sum);
         return artifactBuilder.build();
     }
-
-    private String getMd5(String groupId, String fileName, MavenBuild mavenBuild) {
-        String md5 = null;
-        Fingerprinter.FingerprintAction fingerprint = ActionableHelper.getLatestAction(
-                mavenBuild, Fingerprinter.FingerprintAction.class);
-        if (fingerprint != null) {
-            md5 = fingerprint.getRecords().get(groupId + ":" + fileName);
-        }
-        return md5;
-    }
 }
@@ -77,8 +77,7 @@ public class MavenDependenciesRecorder extends MavenReporter {
 
             public Void call(MavenBuild build) throws IOException, InterruptedException {
                 // add the action
-                //TODO: [by yl] These actions are persisted into the build.xml of each build run - we need another
-                //context to store these actions
+                // the dependencies themselves are stored in a side file, only the action is persisted in the build.xml
                 build.getActions().add(new MavenDependenciesRecord(build, d));
                 return null;
             }
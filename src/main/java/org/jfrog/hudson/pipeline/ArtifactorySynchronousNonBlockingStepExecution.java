@@ -0,0 +1,127 @@
+package org.jfrog.hudson.pipeline;
+
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base execution for pipeline steps doing network bound work (uploads, downloads, docker and promotion).
+ * The work is done on a dedicated bounded thread pool instead of the CPS VM thread,
+ * so a slow Artifactory request does not block the other parallel branches of the pipeline.
+ * The step result is returned to the pipeline once {@link #run()} completes, same as in a synchronous execution.
+ * <p>
+ * workflow-step-api's AbstractSynchronousNonBlockingStepExecution runs its steps on an unbounded pool, and can't
+ * complete a step after its body returned, which the asynchronous promotion needs.
+ */
+public abstract class ArtifactorySynchronousNonBlockingStepExecution<T> extends AbstractStepExecutionImpl {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of steps running concurrently. Can be overridden by a system property on the master.
+     */
+    private static final int POOL_SIZE = Integer.getInteger(
+            ArtifactorySynchronousNonBlockingStepExecution.class.getName() + ".poolSize", 10);
+
+    private static ExecutorService executorService;
+
+    private transient volatile Future<?> task;
+    private transient volatile boolean completedAsynchronously;
+    private transient boolean completed;
+
+    /**
+     * Meat of the execution, runs on the Artifactory steps thread pool.
+     *
+     * @return the step result
+     */
+    protected abstract T run() throws Exception;
+
+    /**
+     * Called from {@link #run()} to release the pool thread while the step is still in progress.
+     * The result of {@link #run()} is then ignored and the execution completes the step through its context.
+     */
+    protected void completeAsynchronously() {
+        completedAsynchronously = true;
+    }
+
+    /**
+     * Marks the step as completed. The step context must only be completed when this returns true,
+     * so a step stopped while finishing is not completed twice.
+     *
+     * @return false if the step was already completed
+     */
+    protected synchronized boolean markCompleted() {
+        if (completed) {
+            return false;
+        }
+        completed = true;
+        return true;
+    }
+
+    @Override
+    public final boolean start() throws Exception {
+        final Authentication auth = Jenkins.getAuthentication();
+        task = getExecutorService().submit(new Runnable() {
+            public void run() {
+                SecurityContext originalContext = ACL.impersonate(auth);
+                try {
+                    T result = ArtifactorySynchronousNonBlockingStepExecution.this.run();
+                    if (!completedAsynchronously && markCompleted()) {
+                        getContext().onSuccess(result);
+                    }
+                } catch (Throwable e) {
+                    if (markCompleted()) {
+                        getContext().onFailure(e);
+                    }
+                } finally {
+                    SecurityContextHolder.setContext(originalContext);
+                }
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+        if (task != null) {
+            task.cancel(true);
+        }
+        if (markCompleted()) {
+            getContext().onFailure(cause);
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (task == null) {
+            getContext().onFailure(new Exception("Resume after a restart is not supported for Artifactory steps"));
+        }
+    }
+
+    private static synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new StepThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            executorService = executor;
+        }
+        return executorService;
+    }
+
+    private static class StepThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Artifactory pipeline step #" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(ArtifactorySynchronousNonBlockingStepExecution.class.getClassLoader());
+            return thread;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import hudson.plugins.git.util.BuildData;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.jfrog.build.api.BuildInfoFields;
 import org.jfrog.build.api.Vcs;
 import org.jfrog.build.extractor.clientConfiguration.IncludeExcludePatterns;
@@ -204,19 +205,34 @@ public class Utils {
         }
     }
 
+    /**
+     * Copy the Build-Info proxy certificates to the agent.
+     * Certificates which already exist on the agent with the same checksum are not copied.
+     *
+     * @param c
+     * @throws IOException
+     * @throws InterruptedException
+     */
     public static void copyCertsToAgent(Computer c) throws IOException, InterruptedException {
         if (!(c instanceof Jenkins.MasterComputer)) {
 
             String certPath = CertManager.DEFAULT_RELATIVE_CERT_PATH;
             FilePath remotePublicKey = new FilePath(c.getChannel(), c.getNode().getRootPath() + "/" + certPath);
             FilePath localPublicKey = new FilePath(Jenkins.getInstance().getRootPath(), certPath);
-            localPublicKey.copyTo(remotePublicKey);
+            copyIfChanged(localPublicKey, remotePublicKey);
 
             String keyPath = CertManager.DEFAULT_RELATIVE_KEY_PATH;
             FilePath remotePrivateKey = new FilePath(c.getChannel(), c.getNode().getRootPath() + "/" + keyPath);
             FilePath localPrivateKey = new FilePath(Jenkins.getInstance().getRootPath(), keyPath);
-            localPrivateKey.copyTo(remotePrivateKey);
+            copyIfChanged(localPrivateKey, remotePrivateKey);
+        }
+    }
+
+    private static void copyIfChanged(FilePath source, FilePath target) throws IOException, InterruptedException {
+        if (target.exists() && StringUtils.equals(source.digest(), target.digest())) {
+            return;
         }
+        source.copyTo(target);
     }
 
 }
@@ -13,7 +13,6 @@ import org.jfrog.build.api.Module;
 import org.jfrog.build.api.builder.ArtifactBuilder;
 import org.jfrog.build.api.builder.DependencyBuilder;
 import org.jfrog.build.api.search.AqlSearchResult;
-import org.jfrog.build.client.ArtifactoryVersion;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
 import org.jfrog.hudson.ArtifactoryServer;
@@ -25,6 +24,10 @@ import org.jfrog.hudson.util.CredentialManager;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by romang on 8/9/16.
@@ -35,7 +38,9 @@ public class DockerImage implements Serializable {
     private final String manifest;
     private final String targetRepo;
     private Properties properties = new Properties();
-    private final ArtifactoryVersion VIRTUAL_REPOS_SUPPORTED_VERSION = new ArtifactoryVersion("4.8.1");
+    // Layer digest to SHA-1 of the layers uploaded through the build-info proxy
+    private final Map<String, String> recordedLayersSha1 = new HashMap<String, String>();
+    private static final int PROPERTIES_TAGGING_THREADS = 8;
 
     public DockerImage(String imageId, String imageTag, String targetRepo, String manifest) {
         this.imageId = imageId;
@@ -56,7 +61,34 @@ public class DockerImage implements Serializable {
         this.properties.putAll(properties);
     }
 
-    public Module generateBuildInfoModule(Run build, TaskListener listener, ArtifactoryConfigurator config, String buildName, String buildNumber, String timestamp) throws IOException {
+    public void addRecordedLayers(Map<String, String> recordedLayersSha1) {
+        this.recordedLayersSha1.putAll(recordedLayersSha1);
+    }
+
+    public List<String> getLayersDigests() throws IOException {
+        return DockerUtils.getLayersDigests(manifest);
+    }
+
+    /**
+     * Returns the digests of the layers which need to be searched in Artifactory.
+     * The layers recorded by the proxy are skipped, the manifest is always searched to find the actual repository
+     * the image was deployed to.
+     *
+     * @return
+     * @throws IOException
+     */
+    public List<String> getLayersDigestsToResolve() throws IOException {
+        List<String> digests = new ArrayList<String>();
+        for (String digest : DockerUtils.getLayersDigests(manifest)) {
+            if (!recordedLayersSha1.containsKey(digest)) {
+                digests.add(digest);
+            }
+        }
+        return digests;
+    }
+
+    public Module generateBuildInfoModule(Run build, TaskListener listener, ArtifactoryConfigurator config, String buildName,
+                                          String buildNumber, String timestamp, DockerLayersIndex layersIndex) throws IOException, InterruptedException {
         final String buildProperties = String.format("build.name=%s|build.number=%s|build.timestamp=%s", buildName, buildNumber, timestamp);
         Properties artifactProperties = new Properties();
         artifactProperties.setProperty("build.name", buildName);
@@ -71,18 +103,14 @@ public class DockerImage implements Serializable {
                 server.createProxyConfiguration(Jenkins.getInstance().proxy), listener);
 
         CredentialsConfig preferredDeployer = CredentialManager.getPreferredDeployer(config, server);
-        ArtifactoryBuildInfoClient propertyChangeClient = server.createArtifactoryClient(
-                preferredDeployer.getUsername(), preferredDeployer.getPassword(),
-                server.createProxyConfiguration(Jenkins.getInstance().proxy));
 
         Module buildInfoModule = new Module();
         buildInfoModule.setId(imageTag.substring(imageTag.indexOf("/") + 1));
 
-        boolean includeVirtualReposSupported = propertyChangeClient.getArtifactoryVersion().isAtLeast(VIRTUAL_REPOS_SUPPORTED_VERSION);
-        DockerLayers layers = createLayers(dependenciesClient, includeVirtualReposSupported);
+        DockerLayers layers = createLayers(layersIndex);
 
         setDependenciesAndArtifacts(buildInfoModule, layers, buildProperties, artifactProperties,
-                dependenciesClient, propertyChangeClient, server);
+                dependenciesClient, server, preferredDeployer, listener);
         setProperties(buildInfoModule);
         return buildInfoModule;
     }
@@ -93,17 +121,13 @@ public class DockerImage implements Serializable {
         buildInfoModule.setProperties(properties);
     }
 
-    private DockerLayers createLayers(ArtifactoryDependenciesClient dependenciesClient, boolean includeVirtualReposSupported) throws IOException {
-        String queryStr = getAqlQuery(includeVirtualReposSupported);
-        AqlSearchResult result = dependenciesClient.searchArtifactsByAql(queryStr);
+    private DockerLayers createLayers(DockerLayersIndex layersIndex) {
         String imagePath = DockerUtils.getImagePath(imageTag);
 
         DockerLayers layers = new DockerLayers();
-        for (AqlSearchResult.SearchEntry entry : result.getResults()) {
-            if (!StringUtils.equals(entry.getPath(), imagePath)) {
-                continue;
-            }
-
+        // The target repository may be a virtual one, so the recorded layers use the repository the image was found in
+        String layersRepo = targetRepo;
+        for (AqlSearchResult.SearchEntry entry : layersIndex.getEntries(imagePath)) {
             Set<String> virtual_repos = Sets.newHashSet(entry.getVirtualRepos());
             if (!(StringUtils.equals(entry.getRepo(), targetRepo) || virtual_repos.contains(targetRepo))) {
                 continue;
@@ -111,25 +135,56 @@ public class DockerImage implements Serializable {
 
             DockerLayer layer = new DockerLayer(entry);
             layers.addLayer(layer);
+            layersRepo = entry.getRepo();
+        }
+        for (Map.Entry<String, String> recordedLayer : recordedLayersSha1.entrySet()) {
+            if (layers.getByDigest(recordedLayer.getKey()) == null) {
+                layers.addLayer(new DockerLayer(layersRepo, imagePath, recordedLayer.getKey(), recordedLayer.getValue()));
+            }
         }
         return layers;
     }
 
-    private void setDependenciesAndArtifacts(Module buildInfoModule, DockerLayers layers, String buildProperties, Properties artifactProperties, ArtifactoryDependenciesClient dependenciesClient, ArtifactoryBuildInfoClient propertyChangeClient, ArtifactoryServer server) throws IOException {
+    private void setDependenciesAndArtifacts(Module buildInfoModule, DockerLayers layers, String buildProperties,
+                                             Properties artifactProperties, ArtifactoryDependenciesClient dependenciesClient,
+                                             ArtifactoryServer server, CredentialsConfig preferredDeployer,
+                                             TaskListener listener) throws IOException, InterruptedException {
         DockerLayer historyLayer = layers.getByDigest(imageId);
         if (historyLayer == null) {
             return;
         }
-        HttpResponse res = dependenciesClient.downloadArtifact(server.getUrl() + "/" + historyLayer.getFullPath());
-        int dependencyLayerNum = DockerUtils.getNumberOfDependentLayers(IOUtils.toString(res.getEntity().getContent()));
+
+        List<String> layersDigests = DockerUtils.getLayersDigests(manifest);
+        Set<String> layersPaths = new LinkedHashSet<String>();
+        for (String digest : layersDigests) {
+            DockerLayer layer = layers.getByDigest(digest);
+            if (layer != null) {
+                layersPaths.add(layer.getFullPath());
+            }
+        }
+        // Tag the layers in the background while reading the image history
+        ExecutorService taggingExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(PROPERTIES_TAGGING_THREADS, layersPaths.size())));
+        Map<String, String> taggingFailures = tagLayers(taggingExecutor, layersPaths, buildProperties, server, preferredDeployer);
+
+        int dependencyLayerNum;
+        try {
+            HttpResponse res = dependenciesClient.downloadArtifact(server.getUrl() + "/" + historyLayer.getFullPath());
+            dependencyLayerNum = DockerUtils.getNumberOfDependentLayers(IOUtils.toString(res.getEntity().getContent()));
+        } finally {
+            taggingExecutor.shutdown();
+            taggingExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        for (Map.Entry<String, String> failure : taggingFailures.entrySet()) {
+            listener.getLogger().println("Failed setting build properties on docker layer " + failure.getKey() +
+                    ": " + failure.getValue());
+        }
 
         List<Dependency> dependencies = new ArrayList<Dependency>();
         List<Artifact> artifacts = new ArrayList<Artifact>();
-        Iterator<String> it = DockerUtils.getLayersDigests(manifest).iterator();
+        Iterator<String> it = layersDigests.iterator();
         for (int i = 0; i < dependencyLayerNum; i++) {
             String digest = it.next();
             DockerLayer layer = layers.getByDigest(digest);
-            propertyChangeClient.executeUpdateFileProperty(layer.getFullPath(), buildProperties);
             Dependency dependency = new DependencyBuilder().id(layer.getFileName()).sha1(layer.getSha1()).properties(artifactProperties).build();
             dependencies.add(dependency);
 
@@ -144,7 +199,6 @@ public class DockerImage implements Serializable {
             if (layer == null) {
                 continue;
             }
-            propertyChangeClient.executeUpdateFileProperty(layer.getFullPath(), buildProperties);
             Artifact artifact = new ArtifactBuilder(layer.getFileName()).sha1(layer.getSha1()).properties(artifactProperties).build();
             artifacts.add(artifact);
         }
@@ -152,35 +206,45 @@ public class DockerImage implements Serializable {
     }
 
     /**
-     * Prepare AQL query to get all the manifest layers from Artifactory.
-     * Needed for build-info sha1/md5 checksum for each artifact and dependency.
+     * Set the build properties on all the layers of the image.
+     * The layers are split between a few concurrent workers, each using its own client.
+     * A failure does not stop the tagging of the other layers.
      *
-     * @return
-     * @throws IOException
+     * @return layer path to error message of the layers which failed, filled as the workers complete.
      */
-    private String getAqlQuery(boolean includeVirtualRepos) throws IOException {
-        List<String> layersDigest = DockerUtils.getLayersDigests(manifest);
-
-        StringBuilder aqlRequestForDockerSha = new StringBuilder("items.find({\"$or\":[ ");
-        List<String> layersQuery = new ArrayList<String>();
-        for (String digest : layersDigest) {
-            String shaVersion = DockerUtils.getShaVersion(digest);
-            String shaValue = DockerUtils.getShaValue(digest);
-
-            String singleFileQuery = String.format("{\"name\": \"%s\"}", DockerUtils.digestToFileName(digest));
-
-            if (StringUtils.equalsIgnoreCase(shaVersion, "sha1")) {
-                singleFileQuery = String.format("{\"actual_sha1\": \"%s\"}", shaValue);
-            }
-            layersQuery.add(singleFileQuery);
+    private Map<String, String> tagLayers(ExecutorService executor, Collection<String> layersPaths, final String buildProperties,
+                                         final ArtifactoryServer server, final CredentialsConfig preferredDeployer) {
+        final Map<String, String> failures = new ConcurrentHashMap<String, String>();
+        int workersNum = Math.min(PROPERTIES_TAGGING_THREADS, layersPaths.size());
+        List<List<String>> workersPaths = new ArrayList<List<String>>();
+        for (int i = 0; i < workersNum; i++) {
+            workersPaths.add(new ArrayList<String>());
+        }
+        int i = 0;
+        for (String layerPath : layersPaths) {
+            workersPaths.get(i++ % workersNum).add(layerPath);
         }
 
-        aqlRequestForDockerSha.append(StringUtils.join(layersQuery, ","));
-        if (includeVirtualRepos) {
-            aqlRequestForDockerSha.append("]}).include(\"name\",\"repo\",\"path\",\"actual_sha1\",\"virtual_repos\")");
-        } else {
-            aqlRequestForDockerSha.append("]}).include(\"name\",\"repo\",\"path\",\"actual_sha1\")");
+        for (final List<String> paths : workersPaths) {
+            executor.submit(new Runnable() {
+                public void run() {
+                    ArtifactoryBuildInfoClient propertyChangeClient = server.createArtifactoryClient(
+                            preferredDeployer.getUsername(), preferredDeployer.getPassword(),
+                            server.createProxyConfiguration(Jenkins.getInstance().proxy));
+                    try {
+                        for (String path : paths) {
+                            try {
+                                propertyChangeClient.executeUpdateFileProperty(path, buildProperties);
+                            } catch (Exception e) {
+                                failures.put(path, String.valueOf(e.getMessage()));
+                            }
+                        }
+                    } finally {
+                        propertyChangeClient.shutdown();
+                    }
+                }
+            });
         }
-        return aqlRequestForDockerSha.toString();
+        return failures;
     }
 }
@@ -15,6 +15,17 @@ public class DockerLayer implements Serializable {
     private String sha1;
     private String digest;
 
+    /**
+     * Layer recorded by the build-info proxy, in the given Artifactory path.
+     */
+    public DockerLayer(String repo, String path, String digest, String sha1) {
+        this.repo = repo;
+        this.path = path;
+        this.fileName = DockerUtils.digestToFileName(digest);
+        this.sha1 = sha1;
+        this.digest = digest;
+    }
+
     public DockerLayer(AqlSearchResult.SearchEntry entry) {
         this.repo = entry.getRepo();
         this.path = entry.getPath();
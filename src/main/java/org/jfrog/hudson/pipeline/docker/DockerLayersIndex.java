@@ -0,0 +1,140 @@
+package org.jfrog.hudson.pipeline.docker;
+
+import com.google.common.collect.Lists;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.build.api.search.AqlSearchResult;
+import org.jfrog.build.client.ArtifactoryVersion;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
+import org.jfrog.hudson.ArtifactoryServer;
+import org.jfrog.hudson.CredentialsConfig;
+import org.jfrog.hudson.pipeline.ArtifactoryConfigurator;
+import org.jfrog.hudson.pipeline.docker.utils.DockerUtils;
+import org.jfrog.hudson.util.CredentialManager;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Index of the layers of all the docker images captured in a build.
+ * Images of the same build usually share most of their base layers, so the layers digests are de-duplicated
+ * across all the images and resolved with a few paginated AQL queries, instead of a query per image.
+ * Layers recorded by the build-info proxy while they were pushed are not searched.
+ */
+public class DockerLayersIndex {
+    private static final ArtifactoryVersion VIRTUAL_REPOS_SUPPORTED_VERSION = new ArtifactoryVersion("4.8.1");
+    /**
+     * Maximum number of layers digests in a single AQL query.
+     */
+    static final int DIGESTS_PER_QUERY = 200;
+
+    // Layer path to the Artifactory items found in it
+    private final Map<String, List<AqlSearchResult.SearchEntry>> pathToEntries = new HashMap<String, List<AqlSearchResult.SearchEntry>>();
+    private final boolean includeVirtualRepos;
+
+    DockerLayersIndex(boolean includeVirtualRepos) {
+        this.includeVirtualRepos = includeVirtualRepos;
+    }
+
+    /**
+     * Resolve the layers of all the images from Artifactory.
+     *
+     * @param build
+     * @param listener
+     * @param config
+     * @param dockerImages the images captured in the build
+     * @return
+     * @throws IOException
+     */
+    public static DockerLayersIndex create(Run build, TaskListener listener, ArtifactoryConfigurator config,
+                                           Collection<DockerImage> dockerImages) throws IOException {
+        ArtifactoryServer server = config.getArtifactoryServer();
+        CredentialsConfig preferredResolver = server.getDeployerCredentialsConfig();
+        ArtifactoryDependenciesClient dependenciesClient = server.createArtifactoryDependenciesClient(
+                preferredResolver.provideUsername(build.getParent()), preferredResolver.providePassword(build.getParent()),
+                server.createProxyConfiguration(Jenkins.getInstance().proxy), listener);
+        CredentialsConfig preferredDeployer = CredentialManager.getPreferredDeployer(config, server);
+        ArtifactoryBuildInfoClient buildInfoClient = server.createArtifactoryClient(
+                preferredDeployer.getUsername(), preferredDeployer.getPassword(),
+                server.createProxyConfiguration(Jenkins.getInstance().proxy));
+        try {
+            DockerLayersIndex index = new DockerLayersIndex(
+                    buildInfoClient.getArtifactoryVersion().isAtLeast(VIRTUAL_REPOS_SUPPORTED_VERSION));
+            Set<String> digests = new LinkedHashSet<String>();
+            for (DockerImage dockerImage : dockerImages) {
+                digests.addAll(dockerImage.getLayersDigestsToResolve());
+            }
+            for (List<String> page : Lists.partition(new ArrayList<String>(digests), DIGESTS_PER_QUERY)) {
+                AqlSearchResult result = dependenciesClient.searchArtifactsByAql(index.getAqlQuery(page));
+                index.addEntries(result.getResults());
+            }
+            return index;
+        } finally {
+            dependenciesClient.shutdown();
+            buildInfoClient.shutdown();
+        }
+    }
+
+    void addEntries(List<AqlSearchResult.SearchEntry> entries) {
+        for (AqlSearchResult.SearchEntry entry : entries) {
+            List<AqlSearchResult.SearchEntry> pathEntries = pathToEntries.get(entry.getPath());
+            if (pathEntries == null) {
+                pathEntries = new ArrayList<AqlSearchResult.SearchEntry>();
+                pathToEntries.put(entry.getPath(), pathEntries);
+            }
+            pathEntries.add(entry);
+        }
+    }
+
+    /**
+     * Returns the layers found under the image path.
+     *
+     * @param imagePath
+     * @return
+     */
+    public List<AqlSearchResult.SearchEntry> getEntries(String imagePath) {
+        List<AqlSearchResult.SearchEntry> entries = pathToEntries.get(imagePath);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        return entries;
+    }
+
+    public boolean isIncludeVirtualRepos() {
+        return includeVirtualRepos;
+    }
+
+    /**
+     * Prepare AQL query to get the layers from Artifactory.
+     * Needed for build-info sha1/md5 checksum for each artifact and dependency.
+     *
+     * @param layersDigests
+     * @return
+     */
+    String getAqlQuery(List<String> layersDigests) {
+        StringBuilder aqlRequestForDockerSha = new StringBuilder("items.find({\"$or\":[ ");
+        List<String> layersQuery = new ArrayList<String>();
+        for (String digest : layersDigests) {
+            String shaVersion = DockerUtils.getShaVersion(digest);
+            String shaValue = DockerUtils.getShaValue(digest);
+
+            String singleFileQuery = String.format("{\"name\": \"%s\"}", DockerUtils.digestToFileName(digest));
+
+            if (StringUtils.equalsIgnoreCase(shaVersion, "sha1")) {
+                singleFileQuery = String.format("{\"actual_sha1\": \"%s\"}", shaValue);
+            }
+            layersQuery.add(singleFileQuery);
+        }
+
+        aqlRequestForDockerSha.append(StringUtils.join(layersQuery, ","));
+        if (includeVirtualRepos) {
+            aqlRequestForDockerSha.append("]}).include(\"name\",\"repo\",\"path\",\"actual_sha1\",\"virtual_repos\")");
+        } else {
+            aqlRequestForDockerSha.append("]}).include(\"name\",\"repo\",\"path\",\"actual_sha1\")");
+        }
+        return aqlRequestForDockerSha.toString();
+    }
+}
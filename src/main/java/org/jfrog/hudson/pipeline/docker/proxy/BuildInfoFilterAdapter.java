@@ -1,70 +1,212 @@
 package org.jfrog.hudson.pipeline.docker.proxy;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpObject;
-import io.netty.handler.codec.http.HttpRequest;
-import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.*;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
 import org.apache.commons.lang.StringUtils;
 import org.jfrog.hudson.pipeline.docker.utils.DockerAgentUtils;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class responsible for capturing manifest data between docker daemon to Artifactory docker registry.
+ * The manifest chunks are kept as retained slices in a per-channel composite buffer and decoded once,
+ * when the whole body was received.
+ * The chunks of blob uploads are hashed in the background, and the blob is recorded once the registry accepts the
+ * upload completion, so the build-info does not need to search Artifactory for the uploaded layers.
  *
  * Created by romang on 7/10/16.
  */
 public class BuildInfoFilterAdapter extends HttpFiltersAdapter {
 
-    private static ConcurrentMap<Integer, String> partialManifestString = new ConcurrentHashMap<Integer, String>();
+    private static final Logger logger = Logger.getLogger(BuildInfoFilterAdapter.class.getName());
+    private static final AttributeKey<CompositeByteBuf> PARTIAL_MANIFEST = AttributeKey.valueOf("partial_manifest");
+    private static final AttributeKey<Boolean> MANIFEST_CLEANUP = AttributeKey.valueOf("manifest_cleanup");
+    /**
+     * Manifests are small json documents, anything bigger than this is not captured.
+     */
+    static final int MAX_MANIFEST_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_MANIFEST_COMPONENTS = 1024;
+    private static final Pattern BLOB_UPLOAD_PATTERN = Pattern.compile(".*/blobs/uploads/([^/?]+)(\\?.*)?$");
+
+    private final boolean manifestRequest;
+    private final long contentLength;
+    // Set for PATCH and PUT requests of a blob upload
+    private final String blobUploadId;
+    // Set for the PUT request completing a blob upload
+    private final String blobDigest;
+    private volatile long requestSentTime;
+    // Set once the manifest of the current request exceeded the size cap, so its remaining chunks are not captured
+    private boolean skipManifest;
 
     public BuildInfoFilterAdapter(HttpRequest originalRequest, ChannelHandlerContext ctx) {
         super(originalRequest, ctx);
+        this.manifestRequest = isManifestRequest(originalRequest);
+        this.contentLength = manifestRequest ? HttpHeaders.getContentLength(originalRequest, -1) : -1;
+        this.blobUploadId = getBlobUploadId(originalRequest);
+        this.blobDigest = blobUploadId != null && originalRequest.getMethod() == HttpMethod.PUT ?
+                getQueryParam(originalRequest.getUri(), "digest") : null;
     }
 
     public BuildInfoFilterAdapter(HttpRequest originalRequest) {
-        super(originalRequest);
+        this(originalRequest, null);
+    }
+
+    private static boolean isManifestRequest(HttpRequest request) {
+        return request.getMethod() == HttpMethod.PUT
+                && request.getUri().contains("manifest")
+                && StringUtils.contains(request.headers().get("Content-Type"), "manifest.v2");
+    }
+
+    private static String getBlobUploadId(HttpRequest request) {
+        if (request.getMethod() != HttpMethod.PATCH && request.getMethod() != HttpMethod.PUT) {
+            return null;
+        }
+        Matcher matcher = BLOB_UPLOAD_PATTERN.matcher(request.getUri());
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    private static String getQueryParam(String uri, String name) {
+        List<String> values = new QueryStringDecoder(uri).parameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
     }
 
     @Override
     public HttpResponse proxyToServerRequest(HttpObject httpObject) {
-        if (httpObject instanceof ByteBufHolder && originalRequest.getMethod() == HttpMethod.PUT
-                && originalRequest.getUri().contains("manifest")
-                && StringUtils.contains(originalRequest.headers().get("Content-Type"), "manifest.v2")) {
-
-            int origRequestContentLength = Integer.parseInt(originalRequest.headers().get("Content-Length"));
-            String contentStr = ((ByteBufHolder) httpObject).content().toString(CharsetUtil.UTF_8);
-            if (contentStr.length() >= origRequestContentLength) {
-                Properties properties = new Properties();
-                properties.put("User-Agent", originalRequest.headers().get("User-Agent"));
-                DockerAgentUtils.captureContent(contentStr, properties);
-                return null;
+        if (blobUploadId != null && httpObject instanceof ByteBufHolder) {
+            ByteBuf content = ((ByteBufHolder) httpObject).content();
+            if (content.isReadable()) {
+                // Hashed off the I/O thread, the slice is retained until then
+                DockerAgentUtils.recordBlobChunk(blobUploadId, content.slice().retain());
             }
+            return null;
+        }
+        if (!manifestRequest || ctx == null) {
+            return null;
+        }
+        if (httpObject instanceof HttpRequest) {
+            // A new request on the channel, drop whatever was left of a previous one
+            skipManifest = false;
+            releaseManifestBuffer(ctx.channel());
+        }
+        if (skipManifest || !(httpObject instanceof ByteBufHolder)) {
+            return null;
+        }
+        if (contentLength > MAX_MANIFEST_SIZE) {
+            logger.warning("Skipping capture of docker manifest larger than " + MAX_MANIFEST_SIZE + " bytes");
+            return null;
+        }
 
-            if (!partialManifestString.containsKey(ctx.hashCode())) {
-                partialManifestString.put(ctx.hashCode(), contentStr);
+        ByteBuf content = ((ByteBufHolder) httpObject).content();
+        boolean lastContent = httpObject instanceof LastHttpContent;
+        Attribute<CompositeByteBuf> attribute = ctx.channel().attr(PARTIAL_MANIFEST);
+        CompositeByteBuf manifest = attribute.get();
+        if (manifest == null) {
+            if (lastContent || (contentLength >= 0 && content.readableBytes() >= contentLength)) {
+                // The whole manifest arrived in a single chunk, no need to aggregate.
+                capture(content.toString(CharsetUtil.UTF_8));
                 return null;
             }
+            manifest = createManifestBuffer();
+            attribute.set(manifest);
+        }
 
-            String aggregatedString = partialManifestString.get(ctx.hashCode());
-            aggregatedString += contentStr;
-            if (aggregatedString.length() >= origRequestContentLength) {
-                Properties properties = new Properties();
-                properties.put("User-Agent", originalRequest.headers().get("User-Agent"));
-                DockerAgentUtils.captureContent(aggregatedString, properties);
-                partialManifestString.remove(ctx.hashCode());
+        if (content.isReadable()) {
+            if (manifest.readableBytes() + content.readableBytes() > MAX_MANIFEST_SIZE) {
+                logger.warning("Skipping capture of docker manifest larger than " + MAX_MANIFEST_SIZE + " bytes");
+                skipManifest = true;
+                releaseManifestBuffer(ctx.channel());
                 return null;
             }
-
-            partialManifestString.put(ctx.hashCode(), aggregatedString);
+            manifest.addComponent(content.slice().retain());
+            manifest.writerIndex(manifest.writerIndex() + content.readableBytes());
         }
 
+        if (lastContent || (contentLength >= 0 && manifest.readableBytes() >= contentLength)) {
+            String manifestStr = manifest.toString(CharsetUtil.UTF_8);
+            releaseManifestBuffer(ctx.channel());
+            capture(manifestStr);
+        }
         return null;
     }
+
+    @Override
+    public void proxyToServerRequestSent() {
+        requestSentTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void serverToProxyResponseReceiving() {
+        if (requestSentTime > 0) {
+            BuildInfoProxyMetrics.serverResponseLatency.record(System.currentTimeMillis() - requestSentTime);
+            requestSentTime = 0;
+        }
+    }
+
+    @Override
+    public void proxyToServerConnectionFailed() {
+        BuildInfoProxyMetrics.serverConnectionFailures.incrementAndGet();
+    }
+
+    @Override
+    public void serverToProxyResponseTimedOut() {
+        BuildInfoProxyMetrics.serverResponseTimeouts.incrementAndGet();
+    }
+
+    @Override
+    public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if (httpObject instanceof HttpResponse && ((HttpResponse) httpObject).getStatus().code() >= 500) {
+            BuildInfoProxyMetrics.serverErrorResponses.incrementAndGet();
+        }
+        if (blobUploadId != null && httpObject instanceof HttpResponse) {
+            int status = ((HttpResponse) httpObject).getStatus().code();
+            if (status >= 400) {
+                DockerAgentUtils.abortBlobUpload(blobUploadId);
+            } else if (blobDigest != null && status == HttpResponseStatus.CREATED.code()) {
+                DockerAgentUtils.completeBlobUpload(blobUploadId, blobDigest);
+            }
+        }
+        return httpObject;
+    }
+
+    private CompositeByteBuf createManifestBuffer() {
+        final Channel channel = ctx.channel();
+        CompositeByteBuf manifest = channel.alloc().compositeBuffer(MAX_MANIFEST_COMPONENTS);
+        // Make sure a partial manifest does not outlive its connection.
+        // Registered once per channel, since keep-alive connections carry many manifests.
+        if (channel.attr(MANIFEST_CLEANUP).setIfAbsent(Boolean.TRUE) == null) {
+            channel.closeFuture().addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    releaseManifestBuffer(channel);
+                }
+            });
+        }
+        return manifest;
+    }
+
+    private static void releaseManifestBuffer(Channel channel) {
+        CompositeByteBuf manifest = channel.attr(PARTIAL_MANIFEST).getAndRemove();
+        if (manifest != null && manifest.refCnt() > 0) {
+            manifest.release();
+        }
+    }
+
+    private void capture(String manifest) {
+        Properties properties = new Properties();
+        properties.put("User-Agent", originalRequest.headers().get("User-Agent"));
+        DockerAgentUtils.captureContent(manifest, properties);
+    }
 }
@@ -3,9 +3,7 @@ package org.jfrog.hudson.pipeline.docker.proxy;
 import hudson.Extension;
 import hudson.model.Computer;
 import hudson.model.TaskListener;
-import hudson.remoting.Callable;
 import hudson.slaves.ComputerListener;
-import org.jfrog.hudson.pipeline.Utils;
 import org.jfrog.hudson.util.plugins.PluginsUtils;
 
 import java.io.IOException;
@@ -23,16 +21,8 @@ public class BuildInfoProxyListener extends ComputerListener implements Serializ
         final int port = PluginsUtils.getProxyPort();
 
         if (proxyEnabled && c.getChannel() != null) {
-            Utils.copyCertsToAgent(c);
-            final String publicKey = c.getNode().getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_CERT_PATH;
-            final String privateKey = c.getNode().getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_KEY_PATH;
-
-            c.getChannel().call(new Callable<Boolean, IOException>() {
-                public Boolean call() throws IOException {
-                    BuildInfoProxyManager.start(port, publicKey, privateKey);
-                    return true;
-                }
-            });
+            BuildInfoProxyManager.startOnAgent(c, port, BuildInfoProxyManager.getArtifactoryHosts(),
+                    PluginsUtils.getProxyServerConfig());
         }
         super.onOnline(c, listener);
     }
@@ -0,0 +1,59 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.jfrog.hudson.pipeline.Utils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management page showing the Build-Info proxy metrics of the master and the agents.
+ * The same data is available as JSON under <Jenkins server>/buildInfoProxy/json
+ */
+@Extension
+public class BuildInfoProxyManagementLink extends ManagementLink {
+
+    public String getIconFileName() {
+        return "/plugin/artifactory/images/artifactory-icon.png";
+    }
+
+    public String getDisplayName() {
+        return "Artifactory Build-Info Proxy";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Connections, traffic, manifest captures and latencies of the Build-Info proxy on each node.";
+    }
+
+    public String getUrlName() {
+        return "buildInfoProxy";
+    }
+
+    public Collection<ProxyMetricsSnapshot> getNodesMetrics() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return BuildInfoProxyMetrics.collectAll().values();
+    }
+
+    public List<ProxyNodeStatus> getNodesStatus() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return BuildInfoProxyManager.getNodesStatus();
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void doJson(StaplerRequest req, StaplerResponse resp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        json.put("nodes", BuildInfoProxyMetrics.collectAll());
+        json.put("rollout", BuildInfoProxyManager.getNodesStatus());
+        resp.setContentType("application/json;charset=UTF-8");
+        Utils.mapper().writeValue(resp.getWriter(), json);
+    }
+}
@@ -1,18 +1,32 @@
 package org.jfrog.hudson.pipeline.docker.proxy;
 
-import hudson.FilePath;
+import com.google.common.net.HostAndPort;
+import hudson.model.Computer;
 import hudson.model.Node;
 import hudson.remoting.Callable;
+import hudson.util.DaemonThreadFactory;
 import jenkins.model.Jenkins;
 import net.lightbody.bmp.mitm.PemFileCertificateSource;
 import net.lightbody.bmp.mitm.TrustSource;
 import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.hudson.ArtifactoryServer;
+import org.jfrog.hudson.pipeline.Utils;
+import org.jfrog.hudson.util.RepositoriesUtils;
 import org.littleshoot.proxy.HttpProxyServer;
 import org.littleshoot.proxy.impl.DefaultHttpProxyServer;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -21,23 +35,46 @@ import java.util.logging.Logger;
 public class BuildInfoProxyManager {
 
     static private HttpProxyServer server = null;
+    // Internal proxy decrypting the tunnels to the allowed hosts, reachable through the main proxy only.
+    static private HttpProxyServer mitmServer = null;
+    // Hosts whose traffic is decrypted to capture manifests. The Artifactory hosts follow the global configuration,
+    // the docker registry hosts are collected from the builds and are kept across proxy restarts.
+    private static volatile Set<String> artifactoryHosts = Collections.emptySet();
+    private static final Set<String> registryHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private static final Logger logger = Logger.getLogger(BuildInfoProxyManager.class.getName());
+    private static final String MASTER_NODE_NAME = "master";
+    /**
+     * Maximum number of agents the proxy is started on concurrently. Can be overridden by a system property on the master.
+     */
+    private static final int ROLLOUT_THREADS = Integer.getInteger(BuildInfoProxyManager.class.getName() + ".rolloutThreads", 20);
+    // Node name to the status of the last proxy start on it, kept on the master.
+    private static final Map<String, ProxyNodeStatus> nodesStatus = new ConcurrentHashMap<String, ProxyNodeStatus>();
 
-    public static void start(int proxyPort, String proxyPublicKey, String proxyPrivateKey) {
+    public static void start(int proxyPort, String proxyPublicKey, String proxyPrivateKey, Collection<String> allowedHosts,
+                             ProxyServerConfig serverConfig) {
         stop();
         logger.info("Starting Build-Info proxy");
+        setArtifactoryHosts(allowedHosts);
         PemFileCertificateSource fileCertificateSource = CertManager.getCertificateSource(proxyPublicKey, proxyPrivateKey);
         ImpersonatingMitmManager mitmManager = ImpersonatingMitmManager.builder()
                 .rootCertificateSource(fileCertificateSource)
                 .trustSource(TrustSource.defaultTrustSource())
                 .build();
 
-        server = DefaultHttpProxyServer.bootstrap()
+        mitmServer = serverConfig.apply(DefaultHttpProxyServer.bootstrap(), false)
+                .withAddress(new InetSocketAddress("127.0.0.1", 0))
+                .withFiltersSource(new BuildInfoHttpFiltersSource())
+                .withManInTheMiddle(new CertificateCachingMitmManager(mitmManager, fileCertificateSource,
+                        new File(proxyPublicKey).getParentFile()))
+                .plusActivityTracker(new MetricsActivityTracker(true))
+                .start();
+
+        server = serverConfig.apply(DefaultHttpProxyServer.bootstrap(), true)
                 .withPort(proxyPort)
                 .withAllowLocalOnly(false)
                 .withFiltersSource(new BuildInfoHttpFiltersSource())
-                .withManInTheMiddle(mitmManager)
-                .withConnectTimeout(0)
+                .withChainProxyManager(new MitmChainedProxyManager(mitmServer.getListenAddress()))
+                .plusActivityTracker(new MetricsActivityTracker(false))
                 .start();
         logger.info("Build-Info proxy certificate public key path: " + proxyPublicKey);
         logger.info("Build-Info proxy certificate private key path: " + proxyPrivateKey);
@@ -55,6 +92,102 @@ public class BuildInfoProxyManager {
             server.stop();
             server = null;
         }
+        if (mitmServer != null) {
+            mitmServer.stop();
+            mitmServer = null;
+        }
+    }
+
+    /**
+     * Allow decrypting the traffic to the given docker registry host (and its sub domains, used by Artifactory docker
+     * registries). Unlike the Artifactory hosts, registry hosts are kept when the proxy is restarted.
+     *
+     * @param host
+     */
+    public static void addMitmHost(String host) {
+        String hostText = getHostText(host);
+        if (StringUtils.isNotBlank(hostText)) {
+            registryHosts.add(hostText);
+        }
+    }
+
+    /**
+     * Replace the Artifactory hosts whose traffic is decrypted, so that hosts of servers removed from the
+     * configuration are not decrypted anymore.
+     *
+     * @param hosts
+     */
+    public static void setArtifactoryHosts(Collection<String> hosts) {
+        Set<String> hostsText = new HashSet<String>();
+        for (String host : hosts) {
+            String hostText = getHostText(host);
+            if (StringUtils.isNotBlank(hostText)) {
+                hostsText.add(hostText);
+            }
+        }
+        artifactoryHosts = Collections.unmodifiableSet(hostsText);
+    }
+
+    /**
+     * Returns true if the traffic of the CONNECT target should be decrypted.
+     *
+     * @param hostAndPort the CONNECT request target, for example my.artifactory.com:443
+     * @return
+     */
+    public static boolean isMitmHost(String hostAndPort) {
+        String host = getHostText(hostAndPort);
+        if (host == null) {
+            return false;
+        }
+        return matchesHost(host, artifactoryHosts) || matchesHost(host, registryHosts);
+    }
+
+    private static boolean matchesHost(String host, Set<String> mitmHosts) {
+        for (String mitmHost : mitmHosts) {
+            if (host.equals(mitmHost) || host.endsWith("." + mitmHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the lower cased host of a host, host:port, [IPv6] or [IPv6]:port string, or null if it can't be parsed.
+     *
+     * @param hostAndPort
+     * @return
+     */
+    private static String getHostText(String hostAndPort) {
+        if (StringUtils.isBlank(hostAndPort)) {
+            return null;
+        }
+        try {
+            return HostAndPort.fromString(hostAndPort.trim()).getHostText().toLowerCase();
+        } catch (IllegalArgumentException e) {
+            logger.fine("Could not parse host: " + hostAndPort);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hosts of the configured Artifactory servers.
+     *
+     * @return
+     */
+    public static ArrayList<String> getArtifactoryHosts() {
+        ArrayList<String> hosts = new ArrayList<String>();
+        List<ArtifactoryServer> servers = RepositoriesUtils.getArtifactoryServers();
+        if (servers == null) {
+            return hosts;
+        }
+        for (ArtifactoryServer artifactoryServer : servers) {
+            try {
+                hosts.add(new URL(artifactoryServer.getUrl()).getHost());
+            } catch (MalformedURLException e) {
+                logger.warning("Could not parse Artifactory URL: " + artifactoryServer.getUrl());
+            }
+        }
+        return hosts;
     }
 
     public static void stopAll() throws IOException, InterruptedException {
@@ -73,36 +206,137 @@ public class BuildInfoProxyManager {
         }
     }
 
-    public static void startAll(final int port)
+    /**
+     * Update the Artifactory hosts decrypted by the running proxy on the master and on all the online agents,
+     * without restarting it. Each agent failure is logged, the agent gets the hosts again when it reconnects.
+     *
+     * @throws InterruptedException
+     */
+    public static void updateArtifactoryHostsAll() throws InterruptedException {
+        final ArrayList<String> hosts = getArtifactoryHosts();
+        setArtifactoryHosts(hosts);
+        for (Node node : Jenkins.getInstance().getNodes()) {
+            if (node == null || node.getChannel() == null) {
+                continue;
+            }
+            try {
+                node.getChannel().call(new Callable<Boolean, IOException>() {
+                    public Boolean call() throws IOException {
+                        BuildInfoProxyManager.setArtifactoryHosts(hosts);
+                        return true;
+                    }
+                });
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed updating the Build-Info proxy hosts on " + node.getNodeName(), e);
+            }
+        }
+    }
+
+    /**
+     * Start the proxy on the master and on all the online agents.
+     * The agents are handled concurrently, each agent failure is logged and kept in its node status
+     * instead of failing the whole rollout.
+     *
+     * @param port
+     * @param serverConfig
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void startAll(final int port, final ProxyServerConfig serverConfig)
             throws IOException, InterruptedException {
 
         File jenkinsHome = new File(Jenkins.getInstance().getRootDir().getPath());
         File publicCert = new File(jenkinsHome, CertManager.DEFAULT_RELATIVE_CERT_PATH);
         File privateCert = new File(jenkinsHome, CertManager.DEFAULT_RELATIVE_KEY_PATH);
 
-        start(port, publicCert.getPath(), privateCert.getPath());
+        final ArrayList<String> artifactoryHosts = getArtifactoryHosts();
+        long startTime = System.currentTimeMillis();
+        start(port, publicCert.getPath(), privateCert.getPath(), artifactoryHosts, serverConfig);
+        nodesStatus.clear();
+        nodesStatus.put(MASTER_NODE_NAME, ProxyNodeStatus.started(MASTER_NODE_NAME, System.currentTimeMillis() - startTime));
+
         List<Node> nodes = Jenkins.getInstance().getNodes();
-        for (Node node : nodes) {
-            if (node == null || node.getChannel() == null) {
-                continue;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(ROLLOUT_THREADS, nodes.size())),
+                new DaemonThreadFactory());
+        try {
+            for (Node node : nodes) {
+                if (node == null || node.getChannel() == null) {
+                    continue;
+                }
+                final Computer computer = node.toComputer();
+                if (computer == null) {
+                    continue;
+                }
+                executor.submit(new Runnable() {
+                    public void run() {
+                        startOnAgent(computer, port, artifactoryHosts, serverConfig);
+                    }
+                });
             }
-            final String agentCertPath = node.getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_CERT_PATH;
-            final String agentKeyPath = node.getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_KEY_PATH;
-
-            FilePath remoteCertPath = new FilePath(node.getChannel(), agentCertPath);
-            FilePath localCertPath = new FilePath(publicCert);
-            localCertPath.copyTo(remoteCertPath);
-
-            FilePath remoteKeyPath = new FilePath(node.getChannel(), agentKeyPath);
-            FilePath localKeyPath = new FilePath(privateCert);
-            localKeyPath.copyTo(remoteKeyPath);
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        logger.info("Build-Info proxy rollout completed in " + (System.currentTimeMillis() - startTime) + "ms, " +
+                getStartedNodesCount() + " out of " + nodesStatus.size() + " nodes started");
+    }
 
-            node.getChannel().call(new Callable<Boolean, IOException>() {
+    /**
+     * Copy the proxy certificates to the agent, if they changed, and start the proxy on it.
+     *
+     * @param computer
+     * @param port
+     * @param artifactoryHosts
+     * @param serverConfig
+     * @return the agent status, also kept in the nodes status
+     */
+    public static ProxyNodeStatus startOnAgent(Computer computer, final int port, final ArrayList<String> artifactoryHosts,
+                                               final ProxyServerConfig serverConfig) {
+        String nodeName = StringUtils.defaultIfEmpty(computer.getName(), MASTER_NODE_NAME);
+        long startTime = System.currentTimeMillis();
+        ProxyNodeStatus status;
+        try {
+            Utils.copyCertsToAgent(computer);
+            final String agentCertPath = computer.getNode().getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_CERT_PATH;
+            final String agentKeyPath = computer.getNode().getRootPath() + "/" + CertManager.DEFAULT_RELATIVE_KEY_PATH;
+            computer.getChannel().call(new Callable<Boolean, IOException>() {
                 public Boolean call() throws IOException {
-                    BuildInfoProxyManager.start(port, agentCertPath, agentKeyPath);
+                    BuildInfoProxyManager.start(port, agentCertPath, agentKeyPath, artifactoryHosts, serverConfig);
                     return true;
                 }
             });
+            status = ProxyNodeStatus.started(nodeName, System.currentTimeMillis() - startTime);
+            logger.fine("Build-Info proxy " + status);
+        } catch (Exception e) {
+            status = ProxyNodeStatus.failed(nodeName, e.getMessage(), System.currentTimeMillis() - startTime);
+            logger.log(Level.WARNING, "Build-Info proxy " + status, e);
+        }
+        nodesStatus.put(nodeName, status);
+        return status;
+    }
+
+    /**
+     * Returns the status of the last proxy start on each node.
+     *
+     * @return
+     */
+    public static List<ProxyNodeStatus> getNodesStatus() {
+        List<ProxyNodeStatus> statuses = new ArrayList<ProxyNodeStatus>(nodesStatus.values());
+        Collections.sort(statuses, new Comparator<ProxyNodeStatus>() {
+            public int compare(ProxyNodeStatus s1, ProxyNodeStatus s2) {
+                return s1.getNodeName().compareTo(s2.getNodeName());
+            }
+        });
+        return statuses;
+    }
+
+    private static int getStartedNodesCount() {
+        int started = 0;
+        for (ProxyNodeStatus status : nodesStatus.values()) {
+            if (status.isStarted()) {
+                started++;
+            }
         }
+        return started;
     }
 }
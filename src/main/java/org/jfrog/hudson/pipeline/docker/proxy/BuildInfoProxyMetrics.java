@@ -0,0 +1,112 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import hudson.model.Computer;
+import hudson.remoting.Callable;
+import hudson.remoting.Future;
+import hudson.remoting.VirtualChannel;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.hudson.pipeline.docker.utils.DockerAgentUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runtime metrics of the Build-Info proxy running in this JVM (master or agent).
+ * The counters are updated by the proxy I/O threads and collected by the master over the remoting channel.
+ */
+public class BuildInfoProxyMetrics {
+
+    private static final Logger logger = Logger.getLogger(BuildInfoProxyMetrics.class.getName());
+    private static final long COLLECT_TIMEOUT_SECONDS = 10;
+
+    static final AtomicLong activeConnections = new AtomicLong();
+    static final AtomicLong totalConnections = new AtomicLong();
+    static final AtomicLong bytesFromClients = new AtomicLong();
+    static final AtomicLong bytesToClients = new AtomicLong();
+    // Requests received by the main proxy, including the CONNECT requests of tunnels
+    static final AtomicLong requests = new AtomicLong();
+    // Requests decrypted by the internal man in the middle proxy, out of the tunnels to the allowed hosts
+    static final AtomicLong decryptedRequests = new AtomicLong();
+    static final AtomicLong tlsHandshakes = new AtomicLong();
+    static final AtomicLong manifestCaptures = new AtomicLong();
+    static final AtomicLong serverConnectionFailures = new AtomicLong();
+    static final AtomicLong serverResponseTimeouts = new AtomicLong();
+    static final AtomicLong serverErrorResponses = new AtomicLong();
+    static final LatencyHistogram tlsHandshakeLatency = new LatencyHistogram();
+    static final LatencyHistogram serverResponseLatency = new LatencyHistogram();
+
+    public static void manifestCaptured() {
+        manifestCaptures.incrementAndGet();
+    }
+
+    /**
+     * Returns the metrics of the proxy running in this JVM.
+     *
+     * @return
+     */
+    public static ProxyMetricsSnapshot snapshot() {
+        Map<String, Long> counters = new LinkedHashMap<String, Long>();
+        counters.put("activeConnections", activeConnections.get());
+        counters.put("totalConnections", totalConnections.get());
+        counters.put("bytesFromClients", bytesFromClients.get());
+        counters.put("bytesToClients", bytesToClients.get());
+        counters.put("requests", requests.get());
+        counters.put("decryptedRequests", decryptedRequests.get());
+        counters.put("tlsHandshakes", tlsHandshakes.get());
+        counters.put("manifestCaptures", manifestCaptures.get());
+        counters.put("serverConnectionFailures", serverConnectionFailures.get());
+        counters.put("serverResponseTimeouts", serverResponseTimeouts.get());
+        counters.put("serverErrorResponses", serverErrorResponses.get());
+        counters.putAll(DockerAgentUtils.getLocalImageRegistryStats());
+
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+        latencies.put("tlsHandshake", tlsHandshakeLatency.snapshot());
+        latencies.put("serverResponse", serverResponseLatency.snapshot());
+        return new ProxyMetricsSnapshot(BuildInfoProxyManager.isUp(), counters, latencies);
+    }
+
+    /**
+     * Collect the proxy metrics of the master and of all the online agents.
+     * The agents are queried concurrently, an agent which does not answer in time is reported as unavailable.
+     *
+     * @return node name to the node metrics
+     */
+    public static Map<String, ProxyMetricsSnapshot> collectAll() {
+        Map<String, Future<ProxyMetricsSnapshot>> futures = new LinkedHashMap<String, Future<ProxyMetricsSnapshot>>();
+        Map<String, ProxyMetricsSnapshot> metrics = new LinkedHashMap<String, ProxyMetricsSnapshot>();
+        for (Computer computer : Jenkins.getInstance().getComputers()) {
+            String nodeName = StringUtils.defaultIfEmpty(computer.getName(), "master");
+            VirtualChannel channel = computer.getChannel();
+            if (channel == null) {
+                continue;
+            }
+            try {
+                futures.put(nodeName, channel.callAsync(new Callable<ProxyMetricsSnapshot, IOException>() {
+                    public ProxyMetricsSnapshot call() throws IOException {
+                        return BuildInfoProxyMetrics.snapshot();
+                    }
+                }));
+            } catch (IOException e) {
+                metrics.put(nodeName, ProxyMetricsSnapshot.unavailable(nodeName, e.getMessage()));
+            }
+        }
+        for (Map.Entry<String, Future<ProxyMetricsSnapshot>> entry : futures.entrySet()) {
+            try {
+                ProxyMetricsSnapshot snapshot = entry.getValue().get(COLLECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                snapshot.setNodeName(entry.getKey());
+                metrics.put(entry.getKey(), snapshot);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Failed collecting Build-Info proxy metrics from " + entry.getKey(), e);
+                entry.getValue().cancel(true);
+                metrics.put(entry.getKey(), ProxyMetricsSnapshot.unavailable(entry.getKey(), String.valueOf(e.getMessage())));
+            }
+        }
+        return metrics;
+    }
+}
@@ -3,6 +3,7 @@ package org.jfrog.hudson.pipeline.docker.proxy;
 import net.lightbody.bmp.mitm.CertificateInfo;
 import net.lightbody.bmp.mitm.PemFileCertificateSource;
 import net.lightbody.bmp.mitm.RootCertificateGenerator;
+import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.util.Date;
@@ -14,9 +15,13 @@ public class CertManager {
     /**
      * The default algorithm to use when encrypting objects in PEM files (such as private keys).
      */
-    private static final String DEFAULT_PEM_ENCRYPTION_ALGORITHM = "AES-128-CBC";
+    static final String DEFAULT_PEM_ENCRYPTION_ALGORITHM = "AES-128-CBC";
     public static String DEFAULT_RELATIVE_CERT_PATH = "secrets/jfrog/certs/jfrog.proxy.crt";
     public static String DEFAULT_RELATIVE_KEY_PATH = "secrets/jfrog/certs/jfrog.proxy.key";
+    /**
+     * Sub directory of the certificates directory holding the cached impersonated per-host certificates.
+     */
+    static final String HOSTS_CERTS_DIR = "hosts";
 
     public static PemFileCertificateSource getCertificateSource(String proxyPublicKeyFilePath, String proxyPrivateKeyFilePath) {
         return new PemFileCertificateSource(
@@ -43,6 +48,9 @@ public class CertManager {
 
         rootCertificateGenerator.saveRootCertificateAsPemFile(certFile);
         rootCertificateGenerator.savePrivateKeyAsPemFile(keyFile, DEFAULT_PEM_ENCRYPTION_ALGORITHM);
+
+        // Host certificates signed by the previous root certificate are no longer valid
+        FileUtils.deleteQuietly(new File(certFile.getParentFile(), HOSTS_CERTS_DIR));
     }
 
 }
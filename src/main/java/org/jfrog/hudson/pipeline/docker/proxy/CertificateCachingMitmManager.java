@@ -0,0 +1,199 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import net.lightbody.bmp.mitm.CertificateAndKey;
+import net.lightbody.bmp.mitm.CertificateAndKeySource;
+import net.lightbody.bmp.mitm.CertificateInfo;
+import net.lightbody.bmp.mitm.keys.RSAKeyGenerator;
+import net.lightbody.bmp.mitm.manager.ImpersonatingMitmManager;
+import net.lightbody.bmp.mitm.tools.DefaultSecurityProviderTool;
+import net.lightbody.bmp.mitm.tools.SecurityProviderTool;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.littleshoot.proxy.MitmManager;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Man in the middle manager keeping the impersonated per-host certificates and keys in a bounded cache,
+ * both in memory and as PEM files under the proxy certificates directory.
+ * Generating the per-host RSA keys is expensive, so the certificates survive proxy restarts and agent reconnects.
+ * The cache is keyed by the hostname and the fingerprint of the root certificate, so regenerating the root
+ * certificate invalidates it.
+ */
+public class CertificateCachingMitmManager implements MitmManager {
+
+    private static final Logger logger = Logger.getLogger(CertificateCachingMitmManager.class.getName());
+    static final int MAX_CACHED_HOSTS = 256;
+    private static final String MESSAGE_DIGEST = "SHA256";
+    private static final long CERT_VALIDITY_MS = 365L * 24L * 60L * 60L * 1000L;
+
+    // Shared between proxy restarts in the same JVM.
+    private static final Cache<String, SslContext> sslContextCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_HOSTS)
+            .build();
+
+    private final ImpersonatingMitmManager delegate;
+    private final CertificateAndKeySource rootCertificateSource;
+    private final File cacheDir;
+    private final SecurityProviderTool securityProviderTool = new DefaultSecurityProviderTool();
+    private volatile CertificateAndKey rootCertificate;
+    private volatile String rootFingerprint;
+
+    /**
+     * @param delegate              used for the proxy to server connections and for requests without a hostname
+     * @param rootCertificateSource the proxy root certificate
+     * @param certsDir              the proxy certificates directory, the cache is kept under its hosts sub directory
+     */
+    public CertificateCachingMitmManager(ImpersonatingMitmManager delegate, CertificateAndKeySource rootCertificateSource, File certsDir) {
+        this.delegate = delegate;
+        this.rootCertificateSource = rootCertificateSource;
+        this.cacheDir = new File(certsDir, CertManager.HOSTS_CERTS_DIR);
+    }
+
+    public SSLEngine serverSslEngine(String peerHost, int peerPort) {
+        return delegate.serverSslEngine(peerHost, peerPort);
+    }
+
+    public SSLEngine serverSslEngine() {
+        return delegate.serverSslEngine();
+    }
+
+    public SSLEngine clientSslEngineFor(HttpRequest httpRequest, SSLSession serverSslSession) {
+        final String hostname = StringUtils.substringBefore(httpRequest.getUri(), ":").toLowerCase();
+        if (StringUtils.isBlank(hostname)) {
+            return delegate.clientSslEngineFor(httpRequest, serverSslSession);
+        }
+        try {
+            initRootCertificate();
+            SslContext sslContext = sslContextCache.get(rootFingerprint + "/" + hostname, new Callable<SslContext>() {
+                public SslContext call() throws Exception {
+                    CertificateAndKey hostCertificate = loadOrCreateHostCertificate(hostname);
+                    return SslContextBuilder.forServer(hostCertificate.getPrivateKey(), hostCertificate.getCertificate(),
+                            rootCertificate.getCertificate()).build();
+                }
+            });
+            return sslContext.newEngine(ByteBufAllocator.DEFAULT);
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "Failed using cached certificate for " + hostname, e.getCause());
+            return delegate.clientSslEngineFor(httpRequest, serverSslSession);
+        }
+    }
+
+    private synchronized void initRootCertificate() throws ExecutionException {
+        if (rootCertificate != null) {
+            return;
+        }
+        try {
+            CertificateAndKey certificateAndKey = rootCertificateSource.load();
+            rootFingerprint = Hashing.sha1().hashBytes(certificateAndKey.getCertificate().getEncoded()).toString();
+            rootCertificate = certificateAndKey;
+            removeStaleRootDirs();
+        } catch (GeneralSecurityException e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    private CertificateAndKey loadOrCreateHostCertificate(String hostname) throws IOException {
+        File rootDir = new File(cacheDir, rootFingerprint);
+        File certFile = new File(rootDir, hostname + ".crt");
+        File keyFile = new File(rootDir, hostname + ".key");
+        CertificateAndKey cached = loadHostCertificate(certFile, keyFile);
+        if (cached != null) {
+            return cached;
+        }
+
+        KeyPair keyPair = new RSAKeyGenerator().generate();
+        CertificateInfo certificateInfo = new CertificateInfo()
+                .commonName(hostname)
+                .organization("Jfrog Ltd")
+                .subjectAlternativeNames(Collections.singletonList(hostname))
+                .notBefore(new Date(System.currentTimeMillis() - CERT_VALIDITY_MS))
+                .notAfter(new Date(System.currentTimeMillis() + CERT_VALIDITY_MS));
+        CertificateAndKey hostCertificate = securityProviderTool.createServerCertificate(certificateInfo,
+                rootCertificate.getCertificate(), rootCertificate.getPrivateKey(), keyPair, MESSAGE_DIGEST);
+
+        saveHostCertificate(rootDir, certFile, keyFile, hostCertificate);
+        return hostCertificate;
+    }
+
+    private CertificateAndKey loadHostCertificate(File certFile, File keyFile) {
+        if (!certFile.exists() || !keyFile.exists()) {
+            return null;
+        }
+        try {
+            X509Certificate certificate = securityProviderTool.decodePemEncodedCertificate(
+                    new StringReader(FileUtils.readFileToString(certFile, "UTF-8")));
+            certificate.checkValidity();
+            return new CertificateAndKey(certificate, securityProviderTool.decodePemEncodedPrivateKey(
+                    new StringReader(FileUtils.readFileToString(keyFile, "UTF-8")), CertManager.DEFAULT_PEM_ENCRYPTION_ALGORITHM));
+        } catch (Exception e) {
+            logger.fine("Ignoring invalid cached certificate " + certFile.getPath() + ": " + e.getMessage());
+            FileUtils.deleteQuietly(certFile);
+            FileUtils.deleteQuietly(keyFile);
+            return null;
+        }
+    }
+
+    private void saveHostCertificate(File rootDir, File certFile, File keyFile, CertificateAndKey hostCertificate) {
+        try {
+            evictOldest(rootDir);
+            FileUtils.writeStringToFile(keyFile, securityProviderTool.encodePrivateKeyAsPem(hostCertificate.getPrivateKey(),
+                    CertManager.DEFAULT_PEM_ENCRYPTION_ALGORITHM, CertManager.DEFAULT_PEM_ENCRYPTION_ALGORITHM), "UTF-8");
+            FileUtils.writeStringToFile(certFile, securityProviderTool.encodeCertificateAsPem(hostCertificate.getCertificate()), "UTF-8");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed saving certificate to " + certFile.getPath(), e);
+        }
+    }
+
+    /**
+     * Keep at most MAX_CACHED_HOSTS certificates on disk, removing the least recently created ones.
+     */
+    private void evictOldest(File rootDir) {
+        File[] certFiles = rootDir.listFiles();
+        if (certFiles == null || certFiles.length < MAX_CACHED_HOSTS * 2) {
+            return;
+        }
+        Arrays.sort(certFiles, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+            }
+        });
+        for (int i = 0; i <= certFiles.length - MAX_CACHED_HOSTS * 2; i++) {
+            FileUtils.deleteQuietly(certFiles[i]);
+        }
+    }
+
+    /**
+     * Certificates signed by a previous root certificate are never used again.
+     */
+    private void removeStaleRootDirs() {
+        File[] rootDirs = cacheDir.listFiles();
+        if (rootDirs == null) {
+            return;
+        }
+        for (File rootDir : rootDirs) {
+            if (!rootDir.getName().equals(rootFingerprint)) {
+                FileUtils.deleteQuietly(rootDir);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with fixed millisecond buckets.
+ */
+public class LatencyHistogram {
+    static final long[] BOUNDS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // The last bucket counts the values above the highest bound
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public void record(long valueMs) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MS.length && valueMs > BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumMs.addAndGet(valueMs);
+        long max = maxMs.get();
+        while (valueMs > max && !maxMs.compareAndSet(max, valueMs)) {
+            max = maxMs.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, count.get(), sumMs.get(), maxMs.get());
+    }
+
+    public static class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long[] counts;
+        private final long count;
+        private final long sumMs;
+        private final long maxMs;
+
+        Snapshot(long[] counts, long count, long sumMs, long maxMs) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMs = sumMs;
+            this.maxMs = maxMs;
+        }
+
+        /**
+         * Upper bounds of the buckets in milliseconds, the last bucket has no upper bound.
+         */
+        public long[] getBoundsMs() {
+            return BOUNDS_MS;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMs() {
+            return count == 0 ? 0 : sumMs / count;
+        }
+
+        public long getMaxMs() {
+            return maxMs;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile, -1 if above the highest bound.
+         *
+         * @param percentile between 0 and 100
+         * @return
+         */
+        public long getPercentileMs(double percentile) {
+            long threshold = (long) Math.ceil(count * percentile / 100);
+            long accumulated = 0;
+            for (int i = 0; i < BOUNDS_MS.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= threshold) {
+                    return BOUNDS_MS[i];
+                }
+            }
+            return -1;
+        }
+
+        public long getP50Ms() {
+            return getPercentileMs(50);
+        }
+
+        public long getP99Ms() {
+            return getPercentileMs(99);
+        }
+    }
+}
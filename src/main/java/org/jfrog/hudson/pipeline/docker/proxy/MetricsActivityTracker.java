@@ -0,0 +1,79 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import org.littleshoot.proxy.ActivityTrackerAdapter;
+import org.littleshoot.proxy.FlowContext;
+
+import javax.net.ssl.SSLSession;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Feeds the Build-Info proxy metrics.
+ * The main proxy tracks the docker clients connections, traffic and requests, the internal man in the middle proxy
+ * tracks the TLS handshakes with the docker clients and the requests it decrypted, so no request is counted twice.
+ */
+public class MetricsActivityTracker extends ActivityTrackerAdapter {
+
+    private final boolean mitm;
+    // Client address to the time it connected, until its TLS handshake completes
+    private final ConcurrentMap<InetSocketAddress, Long> handshakesStart = new ConcurrentHashMap<InetSocketAddress, Long>();
+
+    public MetricsActivityTracker(boolean mitm) {
+        this.mitm = mitm;
+    }
+
+    @Override
+    public void clientConnected(InetSocketAddress clientAddress) {
+        if (mitm) {
+            handshakesStart.put(clientAddress, System.currentTimeMillis());
+            return;
+        }
+        BuildInfoProxyMetrics.activeConnections.incrementAndGet();
+        BuildInfoProxyMetrics.totalConnections.incrementAndGet();
+    }
+
+    @Override
+    public void clientSSLHandshakeSucceeded(InetSocketAddress clientAddress, SSLSession sslSession) {
+        Long start = handshakesStart.remove(clientAddress);
+        if (start != null) {
+            BuildInfoProxyMetrics.tlsHandshakes.incrementAndGet();
+            BuildInfoProxyMetrics.tlsHandshakeLatency.record(System.currentTimeMillis() - start);
+        }
+    }
+
+    @Override
+    public void clientDisconnected(InetSocketAddress clientAddress, SSLSession sslSession) {
+        if (mitm) {
+            handshakesStart.remove(clientAddress);
+            return;
+        }
+        BuildInfoProxyMetrics.activeConnections.decrementAndGet();
+    }
+
+    @Override
+    public void bytesReceivedFromClient(FlowContext flowContext, int numberOfBytes) {
+        if (!mitm) {
+            BuildInfoProxyMetrics.bytesFromClients.addAndGet(numberOfBytes);
+        }
+    }
+
+    @Override
+    public void bytesSentToClient(FlowContext flowContext, int numberOfBytes) {
+        if (!mitm) {
+            BuildInfoProxyMetrics.bytesToClients.addAndGet(numberOfBytes);
+        }
+    }
+
+    @Override
+    public void requestReceivedFromClient(FlowContext flowContext, HttpRequest httpRequest) {
+        if (!mitm) {
+            BuildInfoProxyMetrics.requests.incrementAndGet();
+        } else if (httpRequest.getMethod() != HttpMethod.CONNECT) {
+            // The CONNECT chained from the main proxy was already counted there
+            BuildInfoProxyMetrics.decryptedRequests.incrementAndGet();
+        }
+    }
+}
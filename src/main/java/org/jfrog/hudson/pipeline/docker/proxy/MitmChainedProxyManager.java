@@ -0,0 +1,37 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import org.littleshoot.proxy.ChainedProxy;
+import org.littleshoot.proxy.ChainedProxyAdapter;
+import org.littleshoot.proxy.ChainedProxyManager;
+
+import java.net.InetSocketAddress;
+import java.util.Queue;
+
+/**
+ * Routes CONNECT requests of allowed hosts (Artifactory servers and docker registries) to the internal
+ * man in the middle proxy, so only their traffic is decrypted.
+ * Tunnels to any other host stay a plain CONNECT pass-through.
+ */
+public class MitmChainedProxyManager implements ChainedProxyManager {
+
+    private final InetSocketAddress mitmProxyAddress;
+
+    public MitmChainedProxyManager(InetSocketAddress mitmProxyAddress) {
+        this.mitmProxyAddress = mitmProxyAddress;
+    }
+
+    public void lookupChainedProxies(HttpRequest httpRequest, Queue<ChainedProxy> chainedProxies) {
+        if (httpRequest.getMethod() == HttpMethod.CONNECT && BuildInfoProxyManager.isMitmHost(httpRequest.getUri())) {
+            chainedProxies.add(new ChainedProxyAdapter() {
+                @Override
+                public InetSocketAddress getChainedProxyAddress() {
+                    return mitmProxyAddress;
+                }
+            });
+            return;
+        }
+        chainedProxies.add(ChainedProxyAdapter.FALLBACK_TO_DIRECT_CONNECTION);
+    }
+}
@@ -0,0 +1,59 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Build-Info proxy metrics of a single node, sent from the agent to the master.
+ */
+public class ProxyMetricsSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String nodeName;
+    private final boolean proxyUp;
+    private final Map<String, Long> counters;
+    private final Map<String, LatencyHistogram.Snapshot> latencies;
+    private String error;
+
+    ProxyMetricsSnapshot(boolean proxyUp, Map<String, Long> counters, Map<String, LatencyHistogram.Snapshot> latencies) {
+        this.proxyUp = proxyUp;
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+
+    static ProxyMetricsSnapshot unavailable(String nodeName, String error) {
+        ProxyMetricsSnapshot snapshot = new ProxyMetricsSnapshot(false, new LinkedHashMap<String, Long>(),
+                new LinkedHashMap<String, LatencyHistogram.Snapshot>());
+        snapshot.nodeName = nodeName;
+        snapshot.error = error;
+        return snapshot;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    public boolean isProxyUp() {
+        return proxyUp;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the reason the metrics could not be collected from the node, null if they were collected.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,55 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+/**
+ * Result of the last Build-Info proxy start on a node.
+ */
+public class ProxyNodeStatus {
+    private final String nodeName;
+    private final boolean started;
+    private final String error;
+    private final long durationMs;
+    private final long timestamp = System.currentTimeMillis();
+
+    private ProxyNodeStatus(String nodeName, boolean started, String error, long durationMs) {
+        this.nodeName = nodeName;
+        this.started = started;
+        this.error = error;
+        this.durationMs = durationMs;
+    }
+
+    public static ProxyNodeStatus started(String nodeName, long durationMs) {
+        return new ProxyNodeStatus(nodeName, true, null, durationMs);
+    }
+
+    public static ProxyNodeStatus failed(String nodeName, String error, long durationMs) {
+        return new ProxyNodeStatus(nodeName, false, error, durationMs);
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        if (started) {
+            return nodeName + ": started in " + durationMs + "ms";
+        }
+        return nodeName + ": failed after " + durationMs + "ms: " + error;
+    }
+}
@@ -0,0 +1,131 @@
+package org.jfrog.hudson.pipeline.docker.proxy;
+
+import org.littleshoot.proxy.HttpProxyServerBootstrap;
+import org.littleshoot.proxy.impl.ThreadPoolConfiguration;
+
+import java.io.Serializable;
+
+/**
+ * Netty threads, timeouts and throttling of the Build-Info proxy, set in the global configuration and applied
+ * to the proxy on the master and on all the agents.
+ */
+public class ProxyServerConfig implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_ACCEPTOR_THREADS = 2;
+    public static final int DEFAULT_WORKER_THREADS = 8;
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 70;
+
+    private final int acceptorThreads;
+    private final int clientToProxyWorkerThreads;
+    private final int proxyToServerWorkerThreads;
+    private final int idleConnectionTimeoutSeconds;
+    private final int connectTimeoutMs;
+    private final long readThrottleBytesPerSecond;
+    private final long writeThrottleBytesPerSecond;
+
+    /**
+     * @param acceptorThreads              threads accepting the docker clients connections
+     * @param clientToProxyWorkerThreads   threads handling the docker clients connections
+     * @param proxyToServerWorkerThreads   threads handling the connections to the registries
+     * @param idleConnectionTimeoutSeconds idle connections are closed after this timeout
+     * @param connectTimeoutMs             timeout of the connections to the registries, 0 for none
+     * @param readThrottleBytesPerSecond   maximum read rate of each connection, 0 for unlimited
+     * @param writeThrottleBytesPerSecond  maximum write rate of each connection, 0 for unlimited
+     */
+    public ProxyServerConfig(int acceptorThreads, int clientToProxyWorkerThreads, int proxyToServerWorkerThreads,
+                             int idleConnectionTimeoutSeconds, int connectTimeoutMs,
+                             long readThrottleBytesPerSecond, long writeThrottleBytesPerSecond) {
+        this.acceptorThreads = acceptorThreads;
+        this.clientToProxyWorkerThreads = clientToProxyWorkerThreads;
+        this.proxyToServerWorkerThreads = proxyToServerWorkerThreads;
+        this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readThrottleBytesPerSecond = readThrottleBytesPerSecond;
+        this.writeThrottleBytesPerSecond = writeThrottleBytesPerSecond;
+    }
+
+    public static ProxyServerConfig defaults() {
+        return new ProxyServerConfig(DEFAULT_ACCEPTOR_THREADS, DEFAULT_WORKER_THREADS, DEFAULT_WORKER_THREADS,
+                DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS, 0, 0, 0);
+    }
+
+    /**
+     * Apply the threads and timeouts to a proxy server.
+     *
+     * @param bootstrap
+     * @param throttle  true to apply the throttling. Only the proxy facing the docker clients is throttled,
+     *                  so chained traffic is not throttled twice.
+     * @return
+     */
+    HttpProxyServerBootstrap apply(HttpProxyServerBootstrap bootstrap, boolean throttle) {
+        bootstrap.withThreadPoolConfiguration(new ThreadPoolConfiguration()
+                .withAcceptorThreads(acceptorThreads)
+                .withClientToProxyWorkerThreads(clientToProxyWorkerThreads)
+                .withProxyToServerWorkerThreads(proxyToServerWorkerThreads))
+                .withIdleConnectionTimeout(idleConnectionTimeoutSeconds)
+                .withConnectTimeout(connectTimeoutMs);
+        if (throttle && (readThrottleBytesPerSecond > 0 || writeThrottleBytesPerSecond > 0)) {
+            bootstrap.withThrottling(readThrottleBytesPerSecond, writeThrottleBytesPerSecond);
+        }
+        return bootstrap;
+    }
+
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    public int getClientToProxyWorkerThreads() {
+        return clientToProxyWorkerThreads;
+    }
+
+    public int getProxyToServerWorkerThreads() {
+        return proxyToServerWorkerThreads;
+    }
+
+    public int getIdleConnectionTimeoutSeconds() {
+        return idleConnectionTimeoutSeconds;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public long getReadThrottleBytesPerSecond() {
+        return readThrottleBytesPerSecond;
+    }
+
+    public long getWriteThrottleBytesPerSecond() {
+        return writeThrottleBytesPerSecond;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProxyServerConfig that = (ProxyServerConfig) o;
+        return acceptorThreads == that.acceptorThreads
+                && clientToProxyWorkerThreads == that.clientToProxyWorkerThreads
+                && proxyToServerWorkerThreads == that.proxyToServerWorkerThreads
+                && idleConnectionTimeoutSeconds == that.idleConnectionTimeoutSeconds
+                && connectTimeoutMs == that.connectTimeoutMs
+                && readThrottleBytesPerSecond == that.readThrottleBytesPerSecond
+                && writeThrottleBytesPerSecond == that.writeThrottleBytesPerSecond;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = acceptorThreads;
+        result = 31 * result + clientToProxyWorkerThreads;
+        result = 31 * result + proxyToServerWorkerThreads;
+        result = 31 * result + idleConnectionTimeoutSeconds;
+        result = 31 * result + connectTimeoutMs;
+        result = 31 * result + (int) (readThrottleBytesPerSecond ^ (readThrottleBytesPerSecond >>> 32));
+        result = 31 * result + (int) (writeThrottleBytesPerSecond ^ (writeThrottleBytesPerSecond >>> 32));
+        return result;
+    }
+}
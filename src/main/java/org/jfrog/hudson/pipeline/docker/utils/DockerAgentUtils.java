@@ -1,16 +1,17 @@
 package org.jfrog.hudson.pipeline.docker.utils;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
 import hudson.Launcher;
 import hudson.remoting.Callable;
+import io.netty.buffer.ByteBuf;
 import org.apache.commons.lang.StringUtils;
 import org.jfrog.hudson.pipeline.docker.DockerImage;
 import org.jfrog.hudson.pipeline.docker.proxy.BuildInfoProxyManager;
+import org.jfrog.hudson.pipeline.docker.proxy.BuildInfoProxyMetrics;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by romang on 8/15/16.
@@ -18,20 +19,22 @@ import java.util.*;
 public class DockerAgentUtils implements Serializable {
 
     /**
-     * Using the structure below to create link between the desired docker image to the build.
+     * Time to live of registered images which were not captured and of captured images which were not collected.
+     * Can be overridden by a system property on the agent.
      */
+    private static final long REGISTRY_TTL_MS = Long.getLong(DockerAgentUtils.class.getName() + ".registryTtlMs",
+            TimeUnit.HOURS.toMillis(12));
 
-    //Contains image id to build-info id for registering imageId to build-info
-    private static Multimap<String, Integer> imageIdToBuildInfoId = ArrayListMultimap.create();
-
-    //Contains all the prepared docker images for build-info
-    private static Multimap<Integer, DockerImage> buildInfoIdToDockerImage = ArrayListMultimap.create();
-
-    //Image id to image tag
-    private static Map<String, String> imageIdToImageTag = new HashMap<String, String>();
+    /**
+     * Using the registry below to create link between the desired docker image to the build.
+     */
+    private static final DockerImageRegistry registry = new DockerImageRegistry(REGISTRY_TTL_MS);
 
-    //Image tag to target repository
-    private static Map<String, String> imageTagToTargetRepo = new HashMap<String, String>();
+    /**
+     * Checksums of the blobs uploaded through the proxy, so their layers need not be searched in Artifactory.
+     */
+    private static final DockerBlobRecorder blobRecorder = new DockerBlobRecorder(REGISTRY_TTL_MS);
+    private static final long BLOB_HASHING_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
 
     /**
      * Check whether the proxy server is up and running on agent(could be Master as well).
@@ -61,13 +64,12 @@ public class DockerAgentUtils implements Serializable {
      * @throws IOException
      * @throws InterruptedException
      */
-    public synchronized static String registerImage(Launcher launcher, final String imageTag, final String host, final String targetRepo, final int buildInfoId) throws IOException, InterruptedException {
+    public static String registerImage(Launcher launcher, final String imageTag, final String host, final String targetRepo, final int buildInfoId) throws IOException, InterruptedException {
         return launcher.getChannel().call(new Callable<String, IOException>() {
             public String call() throws IOException {
+                BuildInfoProxyManager.addMitmHost(DockerUtils.getImageRegistryHost(imageTag));
                 String imageId = DockerUtils.getImageIdFromTag(imageTag, host);
-                imageIdToBuildInfoId.put(imageId, buildInfoId);
-                imageIdToImageTag.put(imageId, imageTag);
-                imageTagToTargetRepo.put(imageTag, targetRepo);
+                registry.register(imageId, imageTag, targetRepo, buildInfoId);
                 return imageId;
             }
         });
@@ -79,21 +81,45 @@ public class DockerAgentUtils implements Serializable {
      * @param content
      * @param properties
      */
-    public synchronized static void captureContent(String content, Properties properties) {
+    public static void captureContent(String content, Properties properties) {
         try {
             String digest = DockerUtils.getConfigDigest(content);
-            for (Integer buildInfoId : imageIdToBuildInfoId.get(digest)) {
-                String imageTag = imageIdToImageTag.get(digest);
-                DockerImage dockerImage = new DockerImage(digest, imageTag, imageTagToTargetRepo.get(imageTag), content);
-                dockerImage.addProperties(properties);
-                buildInfoIdToDockerImage.put(buildInfoId, dockerImage);
-            }
-            imageIdToBuildInfoId.removeAll(digest);
+            registry.capture(digest, content, properties);
+            BuildInfoProxyMetrics.manifestCaptured();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Add a chunk of a blob upload passing through the proxy.
+     *
+     * @param uploadId
+     * @param chunk    the retained chunk, released once hashed
+     */
+    public static void recordBlobChunk(String uploadId, ByteBuf chunk) {
+        blobRecorder.update(uploadId, chunk);
+    }
+
+    /**
+     * Record the blob of an upload accepted by the registry.
+     *
+     * @param uploadId
+     * @param digest
+     */
+    public static void completeBlobUpload(String uploadId, String digest) {
+        blobRecorder.complete(uploadId, digest);
+    }
+
+    /**
+     * Forget an upload rejected by the registry.
+     *
+     * @param uploadId
+     */
+    public static void abortBlobUpload(String uploadId) {
+        blobRecorder.abort(uploadId);
+    }
+
     /**
      * Retrieve prepared docker images from an agent(could be master as well) related to the given build-info id
      *
@@ -106,14 +132,33 @@ public class DockerAgentUtils implements Serializable {
     public static List<DockerImage> getDockerImagesFromAgent(Launcher launcher, final int buildInfoId) throws IOException, InterruptedException {
         return launcher.getChannel().call(new Callable<List<DockerImage>, IOException>() {
             public List<DockerImage> call() throws IOException {
-                List<DockerImage> dockerImages = new ArrayList<DockerImage>();
-                dockerImages.addAll(buildInfoIdToDockerImage.get(buildInfoId));
-                buildInfoIdToDockerImage.removeAll(buildInfoId);
-                return dockerImages;
+                List<DockerImage> images = registry.removeImages(buildInfoId);
+                try {
+                    // The blobs are hashed in the background, let the uploads which already completed be recorded
+                    blobRecorder.awaitPendingCompletions(BLOB_HASHING_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (DockerImage image : images) {
+                    image.addRecordedLayers(blobRecorder.getSha1s(image.getLayersDigests()));
+                }
+                return images;
             }
         });
     }
 
+    /**
+     * Returns the docker images registry and recorded blobs statistics of this JVM.
+     *
+     * @return
+     */
+    public static Map<String, Long> getLocalImageRegistryStats() {
+        Map<String, Long> stats = registry.getStats();
+        stats.put("recordedBlobs", blobRecorder.getRecordedBlobsCount());
+        stats.put("pendingBlobUploads", blobRecorder.getPendingUploadsCount());
+        return stats;
+    }
+
     /**
      * Execute push docker image on agent
      *
@@ -175,7 +220,7 @@ public class DockerAgentUtils implements Serializable {
     public static boolean updateImageParent(Launcher launcher, final String imageTag, final String host, final int buildInfoId) throws IOException, InterruptedException {
         return launcher.getChannel().call(new Callable<Boolean, IOException>() {
             public Boolean call() throws IOException {
-                for (DockerImage image : buildInfoIdToDockerImage.get(buildInfoId)) {
+                for (DockerImage image : registry.getImages(buildInfoId)) {
                     if (image.getImageTag().equals(imageTag)) {
                         String parentId = DockerUtils.getParentId(image.getImageId(), host);
                         if (StringUtils.isNotEmpty(parentId)) {
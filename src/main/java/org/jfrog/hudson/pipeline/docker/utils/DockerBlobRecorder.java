@@ -0,0 +1,314 @@
+package org.jfrog.hudson.pipeline.docker.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import hudson.util.DaemonThreadFactory;
+import io.netty.buffer.ByteBuf;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Records the checksums of the docker blobs uploaded through the build-info proxy.
+ * The blob upload chunks are retained as they pass through the proxy and hashed on a dedicated thread pool, so the
+ * proxy I/O threads only forward the traffic. The upload is recorded when the registry accepts its completion,
+ * once all its chunks were hashed. The SHA-256 of the upload must match the digest of the completed blob, so an upload
+ * which was retried or resumed from another offset is never recorded with a wrong SHA-1.
+ * Layers which were not recorded (blobs which already existed in the registry for example) are resolved from
+ * Artifactory.
+ */
+public class DockerBlobRecorder {
+
+    private static final Logger logger = Logger.getLogger(DockerBlobRecorder.class.getName());
+    private static final int MAX_RECORDED_BLOBS = 10000;
+    private static final int HASHING_THREADS =
+            Integer.getInteger(DockerBlobRecorder.class.getName() + ".hashingThreads", 2);
+    /**
+     * Upload chunks waiting to be hashed are retained in memory. An upload whose pending chunks exceed this size is
+     * not recorded, and its layer is resolved from Artifactory instead.
+     */
+    private static final long MAX_PENDING_BYTES =
+            Long.getLong(DockerBlobRecorder.class.getName() + ".maxPendingBytes", 64 * 1024 * 1024);
+
+    private static ExecutorService hashingExecutor;
+
+    // Upload id to the checksums of the chunks received so far
+    private final Cache<String, Upload> uploads = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .removalListener(new RemovalListener<String, Upload>() {
+                public void onRemoval(RemovalNotification<String, Upload> notification) {
+                    // Release the chunks of abandoned uploads, completed and aborted ones are handled by the caller
+                    if (notification.wasEvicted() && notification.getValue() != null) {
+                        notification.getValue().drop();
+                    }
+                }
+            })
+            .build();
+    // Blob digest to the recorded blob
+    private final Cache<String, RecordedBlob> blobs;
+    // Number of completed uploads whose chunks are still being hashed
+    private int pendingCompletions;
+
+    public DockerBlobRecorder(long timeToLiveMs) {
+        blobs = CacheBuilder.newBuilder()
+                .maximumSize(MAX_RECORDED_BLOBS)
+                .expireAfterWrite(timeToLiveMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Add a chunk of the blob upload. The chunk is hashed in the background and released once hashed.
+     *
+     * @param uploadId the registry upload id
+     * @param chunk    the retained chunk content
+     */
+    public void update(String uploadId, ByteBuf chunk) {
+        Upload upload = uploads.getIfPresent(uploadId);
+        if (upload == null) {
+            upload = new Upload();
+            Upload existing = uploads.asMap().putIfAbsent(uploadId, upload);
+            if (existing != null) {
+                upload = existing;
+            }
+        }
+        upload.add(chunk);
+    }
+
+    /**
+     * Record the blob of a completed upload, once all its chunks were hashed.
+     *
+     * @param uploadId the registry upload id
+     * @param digest   the blob digest sent by the client with the completion request
+     */
+    public void complete(String uploadId, String digest) {
+        Upload upload = uploads.asMap().remove(uploadId);
+        if (upload == null) {
+            return;
+        }
+        if (!StringUtils.equalsIgnoreCase(DockerUtils.getShaVersion(digest), "sha256")) {
+            upload.drop();
+            return;
+        }
+        synchronized (this) {
+            pendingCompletions++;
+        }
+        upload.complete(digest);
+    }
+
+    /**
+     * Forget a failed upload.
+     *
+     * @param uploadId
+     */
+    public void abort(String uploadId) {
+        Upload upload = uploads.asMap().remove(uploadId);
+        if (upload != null) {
+            upload.drop();
+        }
+    }
+
+    /**
+     * Wait for the completed uploads to be hashed and recorded.
+     *
+     * @param timeoutMs maximum time to wait
+     * @throws InterruptedException
+     */
+    public synchronized void awaitPendingCompletions(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (pendingCompletions > 0 && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    private void record(String digest, RecordedBlob blob) {
+        if (blob == null) {
+            logger.fine("Not recording docker blob " + digest + ", its content does not match the digest");
+        } else {
+            blobs.put(digest, blob);
+        }
+        synchronized (this) {
+            pendingCompletions--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the SHA-1 of the recorded blobs out of the given digests.
+     *
+     * @param digests
+     * @return digest to SHA-1
+     */
+    public Map<String, String> getSha1s(Collection<String> digests) {
+        Map<String, String> sha1s = new HashMap<String, String>();
+        for (String digest : digests) {
+            RecordedBlob blob = blobs.getIfPresent(digest);
+            if (blob != null) {
+                sha1s.put(digest, blob.getSha1());
+            }
+        }
+        return sha1s;
+    }
+
+    public RecordedBlob getBlob(String digest) {
+        return blobs.getIfPresent(digest);
+    }
+
+    public long getRecordedBlobsCount() {
+        return blobs.size();
+    }
+
+    public long getPendingUploadsCount() {
+        return uploads.size();
+    }
+
+    public static class RecordedBlob implements Serializable {
+        private final String sha1;
+        private final long size;
+
+        RecordedBlob(String sha1, long size) {
+            this.sha1 = sha1;
+            this.size = size;
+        }
+
+        public String getSha1() {
+            return sha1;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private static synchronized ExecutorService getHashingExecutor() {
+        if (hashingExecutor == null) {
+            hashingExecutor = Executors.newFixedThreadPool(HASHING_THREADS, new DaemonThreadFactory());
+        }
+        return hashingExecutor;
+    }
+
+    /**
+     * Chunks and completion of an upload, hashed in order by at most one pool thread at a time.
+     */
+    private class Upload implements Runnable {
+        private final MessageDigest sha1;
+        private final MessageDigest sha256;
+        private long size;
+
+        // Guarded by this
+        private final Queue<ByteBuf> pendingChunks = new ArrayDeque<ByteBuf>();
+        private long pendingBytes;
+        private String completedDigest;
+        private boolean scheduled;
+        private boolean dropped;
+
+        private Upload() {
+            try {
+                sha1 = MessageDigest.getInstance("SHA-1");
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private synchronized void add(ByteBuf chunk) {
+            if (dropped || completedDigest != null) {
+                chunk.release();
+                return;
+            }
+            if (pendingBytes + chunk.readableBytes() > MAX_PENDING_BYTES) {
+                logger.fine("Not recording docker blob upload, hashing fell behind by more than " +
+                        MAX_PENDING_BYTES + " bytes");
+                chunk.release();
+                drop();
+                return;
+            }
+            pendingChunks.add(chunk);
+            pendingBytes += chunk.readableBytes();
+            schedule();
+        }
+
+        private synchronized void complete(String digest) {
+            if (dropped) {
+                record(digest, null);
+                return;
+            }
+            completedDigest = digest;
+            schedule();
+        }
+
+        private synchronized void drop() {
+            dropped = true;
+            ByteBuf chunk;
+            while ((chunk = pendingChunks.poll()) != null) {
+                chunk.release();
+            }
+            pendingBytes = 0;
+        }
+
+        private void schedule() {
+            if (!scheduled) {
+                scheduled = true;
+                getHashingExecutor().execute(this);
+            }
+        }
+
+        public void run() {
+            while (true) {
+                ByteBuf chunk;
+                String digest = null;
+                synchronized (this) {
+                    chunk = pendingChunks.poll();
+                    if (chunk == null) {
+                        scheduled = false;
+                        if (completedDigest == null) {
+                            return;
+                        }
+                        digest = completedDigest;
+                        completedDigest = null;
+                        if (dropped) {
+                            record(digest, null);
+                            return;
+                        }
+                    } else {
+                        pendingBytes -= chunk.readableBytes();
+                    }
+                }
+                if (digest != null) {
+                    record(digest, toBlob(DockerUtils.getShaValue(digest)));
+                    return;
+                }
+                try {
+                    for (ByteBuffer buffer : chunk.nioBuffers()) {
+                        size += buffer.remaining();
+                        ByteBuffer duplicate = buffer.duplicate();
+                        sha1.update(buffer);
+                        sha256.update(duplicate);
+                    }
+                } finally {
+                    chunk.release();
+                }
+            }
+        }
+
+        private RecordedBlob toBlob(String expectedSha256) {
+            String actualSha256 = Hex.encodeHexString(sha256.digest());
+            if (!actualSha256.equalsIgnoreCase(expectedSha256)) {
+                return null;
+            }
+            return new RecordedBlob(Hex.encodeHexString(sha1.digest()), size);
+        }
+    }
+}
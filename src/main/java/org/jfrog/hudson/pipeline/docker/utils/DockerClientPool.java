@@ -0,0 +1,194 @@
+package org.jfrog.hudson.pipeline.docker.utils;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a docker client per docker daemon host, so the inspect, push and pull operations running on an agent
+ * reuse the daemon connections instead of opening new ones for every operation.
+ * Clients which were not used for longer than the idle timeout are closed, and a client which was idle for
+ * longer than the health check interval is pinged before it is reused.
+ */
+public class DockerClientPool {
+
+    private static final Logger logger = Logger.getLogger(DockerClientPool.class.getName());
+    private static final String DEFAULT_HOST = "";
+
+    private final ConcurrentMap<String, PooledClient> clients = new ConcurrentHashMap<String, PooledClient>();
+    // All the open clients, including invalidated ones which are still in use
+    private final ConcurrentMap<DockerClient, PooledClient> openClients = new ConcurrentHashMap<DockerClient, PooledClient>();
+    private final long idleTimeoutMs;
+    private final long healthCheckIntervalMs;
+
+    public DockerClientPool(long idleTimeoutMs, long healthCheckIntervalMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+    }
+
+    /**
+     * Returns a healthy client of the host. Every call must be followed by {@link #release(DockerClient)}.
+     *
+     * @param host the docker daemon host, empty for the default daemon
+     * @return
+     */
+    public DockerClient acquire(String host) {
+        String key = StringUtils.defaultString(host, DEFAULT_HOST);
+        evictIdle(key);
+        while (true) {
+            PooledClient pooledClient = clients.get(key);
+            if (pooledClient == null) {
+                PooledClient newClient = new PooledClient(createClient(host));
+                pooledClient = clients.putIfAbsent(key, newClient);
+                if (pooledClient == null) {
+                    pooledClient = newClient;
+                    openClients.put(newClient.client, newClient);
+                } else {
+                    close(newClient.client);
+                }
+            }
+            if (!pooledClient.tryAcquire()) {
+                // Closed by a concurrent eviction
+                continue;
+            }
+            if (pooledClient.isHealthy(healthCheckIntervalMs)) {
+                return pooledClient.client;
+            }
+            if (pooledClient.release()) {
+                // Already invalidated concurrently, and this was its last user
+                close(pooledClient);
+            } else {
+                invalidate(key, pooledClient);
+            }
+        }
+    }
+
+    /**
+     * Mark the client as no longer used by the caller.
+     *
+     * @param client a client returned by {@link #acquire(String)}
+     */
+    public void release(DockerClient client) {
+        PooledClient pooledClient = openClients.get(client);
+        if (pooledClient != null && pooledClient.release()) {
+            close(pooledClient);
+        }
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    private void evictIdle(String currentKey) {
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            if (!entry.getKey().equals(currentKey) && entry.getValue().tryClose(idleTimeoutMs)) {
+                clients.remove(entry.getKey(), entry.getValue());
+                close(entry.getValue());
+            }
+        }
+    }
+
+    private void invalidate(String key, PooledClient pooledClient) {
+        if (clients.remove(key, pooledClient) && pooledClient.closeWhenReleased()) {
+            // Otherwise closed by the last user to release it
+            close(pooledClient);
+        }
+    }
+
+    private static DockerClient createClient(String host) {
+        if (StringUtils.isEmpty(host)) {
+            return DockerClientBuilder.getInstance().build();
+        }
+
+        DockerClientConfig config = DockerClientConfig.createDefaultConfigBuilder()
+                .withDockerHost(host)
+                .build();
+        return DockerClientBuilder.getInstance(config).build();
+    }
+
+    private void close(PooledClient pooledClient) {
+        openClients.remove(pooledClient.client, pooledClient);
+        close(pooledClient.client);
+    }
+
+    private static void close(DockerClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Failed closing docker client", e);
+        }
+    }
+
+    private static class PooledClient {
+        // Negative when the client is closed
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final DockerClient client;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long lastHealthCheck = System.currentTimeMillis();
+        private volatile boolean closeWhenReleased;
+
+        private PooledClient(DockerClient client) {
+            this.client = client;
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = inUse.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (inUse.compareAndSet(current, current + 1)) {
+                    lastUsed = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if the client should be closed by the caller
+         */
+        private boolean release() {
+            lastUsed = System.currentTimeMillis();
+            return inUse.decrementAndGet() == 0 && closeWhenReleased && tryClose(0);
+        }
+
+        /**
+         * @return true if the client is not in use and should be closed by the caller
+         */
+        private boolean closeWhenReleased() {
+            closeWhenReleased = true;
+            return tryClose(0);
+        }
+
+        /**
+         * Mark the client as closed if it is not in use and was idle for longer than the given time.
+         */
+        private boolean tryClose(long idleMs) {
+            return System.currentTimeMillis() - lastUsed >= idleMs && inUse.compareAndSet(0, -1);
+        }
+
+        private boolean isHealthy(long healthCheckIntervalMs) {
+            long now = System.currentTimeMillis();
+            if (now - lastHealthCheck < healthCheckIntervalMs) {
+                return true;
+            }
+            try {
+                client.pingCmd().exec();
+                lastHealthCheck = now;
+                return true;
+            } catch (RuntimeException e) {
+                logger.log(Level.FINE, "Docker daemon health check failed, recreating the client", e);
+                return false;
+            }
+        }
+    }
+}
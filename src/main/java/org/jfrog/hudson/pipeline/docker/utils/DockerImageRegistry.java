@@ -0,0 +1,255 @@
+package org.jfrog.hudson.pipeline.docker.utils;
+
+import com.google.common.util.concurrent.Striped;
+import org.jfrog.hudson.pipeline.docker.DockerImage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+
+/**
+ * Thread safe registry linking the docker images pushed on an agent to the build-info they belong to.
+ * Registrations are guarded by per image id striped locks and captured images by per build-info id striped locks,
+ * so pushes of different images and manifest captures on the proxy I/O threads do not block each other.
+ * Entries which were not used for longer than the time to live are evicted, so pushes which never produce a
+ * manifest, or build-infos which are never published, do not leak memory.
+ */
+public class DockerImageRegistry {
+
+    private static final Logger logger = Logger.getLogger(DockerImageRegistry.class.getName());
+    private static final long EVICTION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // Image id to the registration of the image (tag, target repository and build-info ids)
+    private final ConcurrentMap<String, Registration> registrations = new ConcurrentHashMap<String, Registration>();
+    // Build-info id to the captured docker images, waiting to be added to the build-info
+    private final ConcurrentMap<Integer, CapturedImages> capturedImages = new ConcurrentHashMap<Integer, CapturedImages>();
+    private final Striped<Lock> imageLocks = Striped.lock(64);
+    private final Striped<Lock> buildInfoLocks = Striped.lock(64);
+    private final long timeToLiveMs;
+    private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public DockerImageRegistry(long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    /**
+     * Register image to be captured for the given build-info.
+     *
+     * @param imageId
+     * @param imageTag
+     * @param targetRepo
+     * @param buildInfoId
+     */
+    public void register(String imageId, String imageTag, String targetRepo, int buildInfoId) {
+        evictIfNeeded();
+        Lock lock = imageLocks.get(imageId);
+        lock.lock();
+        try {
+            Registration registration = registrations.get(imageId);
+            if (registration == null) {
+                registration = new Registration();
+                registrations.put(imageId, registration);
+            }
+            registration.imageTag = imageTag;
+            registration.targetRepo = targetRepo;
+            registration.buildInfoIds.add(buildInfoId);
+            registration.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create the docker images of all the build-infos registered to the image id, from the captured manifest.
+     *
+     * @param imageId            the config digest of the captured manifest
+     * @param manifest
+     * @param properties
+     * @return number of build-infos the manifest was captured for
+     */
+    public int capture(String imageId, String manifest, Properties properties) {
+        Lock lock = imageLocks.get(imageId);
+        lock.lock();
+        try {
+            Registration registration = registrations.remove(imageId);
+            if (registration == null) {
+                return 0;
+            }
+            for (Integer buildInfoId : registration.buildInfoIds) {
+                DockerImage dockerImage = new DockerImage(imageId, registration.imageTag, registration.targetRepo, manifest);
+                dockerImage.addProperties(properties);
+                addCapturedImage(buildInfoId, dockerImage);
+            }
+            return registration.buildInfoIds.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the images captured for the build-info, without removing them.
+     *
+     * @param buildInfoId
+     * @return
+     */
+    public List<DockerImage> getImages(int buildInfoId) {
+        CapturedImages images = capturedImages.get(buildInfoId);
+        if (images == null) {
+            return Collections.emptyList();
+        }
+        images.touch();
+        return images.images;
+    }
+
+    /**
+     * Returns and removes the images captured for the build-info.
+     *
+     * @param buildInfoId
+     * @return
+     */
+    public List<DockerImage> removeImages(int buildInfoId) {
+        CapturedImages images;
+        Lock lock = buildInfoLocks.get(buildInfoId);
+        lock.lock();
+        try {
+            images = capturedImages.remove(buildInfoId);
+        } finally {
+            lock.unlock();
+        }
+        if (images == null) {
+            return new ArrayList<DockerImage>();
+        }
+        return new ArrayList<DockerImage>(images.images);
+    }
+
+    public int getRegisteredImagesCount() {
+        return registrations.size();
+    }
+
+    public int getCapturedImagesCount() {
+        int count = 0;
+        for (CapturedImages images : capturedImages.values()) {
+            count += images.images.size();
+        }
+        return count;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the live entries statistics of the registry.
+     *
+     * @return
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put("registeredImages", (long) getRegisteredImagesCount());
+        stats.put("capturedImages", (long) getCapturedImagesCount());
+        stats.put("capturedBuildInfos", (long) capturedImages.size());
+        stats.put("evictedEntries", getEvictedCount());
+        return stats;
+    }
+
+    /**
+     * Add the image under the build-info lock, so it is not added to an entry being evicted.
+     *
+     * @param buildInfoId
+     * @param image
+     */
+    private void addCapturedImage(int buildInfoId, DockerImage image) {
+        Lock lock = buildInfoLocks.get(buildInfoId);
+        lock.lock();
+        try {
+            CapturedImages images = capturedImages.get(buildInfoId);
+            if (images == null) {
+                images = new CapturedImages();
+                capturedImages.put(buildInfoId, images);
+            }
+            images.touch();
+            images.add(image);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evict stale entries, at most once per eviction interval.
+     */
+    void evictIfNeeded() {
+        long now = System.currentTimeMillis();
+        long last = lastEviction.get();
+        if (now - last < EVICTION_INTERVAL_MS || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        evict(now);
+    }
+
+    void evict(long now) {
+        int evicted = 0;
+        for (Map.Entry<String, Registration> entry : registrations.entrySet()) {
+            if (now - entry.getValue().lastAccess <= timeToLiveMs) {
+                continue;
+            }
+            Lock lock = imageLocks.get(entry.getKey());
+            lock.lock();
+            try {
+                if (now - entry.getValue().lastAccess > timeToLiveMs && registrations.remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        for (Map.Entry<Integer, CapturedImages> entry : capturedImages.entrySet()) {
+            if (now - entry.getValue().lastAccess <= timeToLiveMs) {
+                continue;
+            }
+            Lock lock = buildInfoLocks.get(entry.getKey());
+            lock.lock();
+            try {
+                if (now - entry.getValue().lastAccess > timeToLiveMs && capturedImages.remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (evicted > 0) {
+            evictedCount.addAndGet(evicted);
+            logger.fine("Evicted " + evicted + " stale docker image entries. Live registrations: " +
+                    getRegisteredImagesCount() + ", live captured images: " + getCapturedImagesCount());
+        }
+    }
+
+    private static class Registration {
+        private volatile String imageTag;
+        private volatile String targetRepo;
+        private final Set<Integer> buildInfoIds = new LinkedHashSet<Integer>();
+        private volatile long lastAccess;
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private static class CapturedImages {
+        private final List<DockerImage> images = new CopyOnWriteArrayList<DockerImage>();
+        private volatile long lastAccess;
+
+        private void add(DockerImage image) {
+            images.add(image);
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -3,8 +3,6 @@ package org.jfrog.hudson.pipeline.docker.utils;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.model.AuthConfig;
-import com.github.dockerjava.core.DockerClientBuilder;
-import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.command.PullImageResultCallback;
 import com.github.dockerjava.core.command.PushImageResultCallback;
 import com.google.common.base.Charsets;
@@ -16,12 +14,21 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by romang on 7/28/16.
  */
 public class DockerUtils implements Serializable {
 
+    /**
+     * Docker clients of the agent, reused by all the docker steps running on it.
+     * The idle timeout and health check interval can be overridden by system properties on the agent.
+     */
+    private static final DockerClientPool clientPool = new DockerClientPool(
+            Long.getLong(DockerUtils.class.getName() + ".clientIdleTimeoutMs", TimeUnit.MINUTES.toMillis(5)),
+            Long.getLong(DockerUtils.class.getName() + ".clientHealthCheckIntervalMs", TimeUnit.SECONDS.toMillis(30)));
+
     /**
      * Get image Id from imageTag using DockerBuildInfoHelper client
      *
@@ -29,8 +36,12 @@ public class DockerUtils implements Serializable {
      * @return
      */
     public static String getImageIdFromTag(String imageTag, String host) {
-        DockerClient dockerClient = getDockerClient(host);
-        return dockerClient.inspectImageCmd(imageTag).exec().getId();
+        DockerClient dockerClient = clientPool.acquire(host);
+        try {
+            return dockerClient.inspectImageCmd(imageTag).exec().getId();
+        } finally {
+            clientPool.release(dockerClient);
+        }
     }
 
     /**
@@ -45,8 +56,12 @@ public class DockerUtils implements Serializable {
         authConfig.withUsername(username);
         authConfig.withPassword(password);
 
-        DockerClient dockerClient = getDockerClient(host);
-        dockerClient.pushImageCmd(imageTag).withAuthConfig(authConfig).exec(new PushImageResultCallback()).awaitSuccess();
+        DockerClient dockerClient = clientPool.acquire(host);
+        try {
+            dockerClient.pushImageCmd(imageTag).withAuthConfig(authConfig).exec(new PushImageResultCallback()).awaitSuccess();
+        } finally {
+            clientPool.release(dockerClient);
+        }
     }
 
     /**
@@ -61,8 +76,12 @@ public class DockerUtils implements Serializable {
         authConfig.withUsername(username);
         authConfig.withPassword(password);
 
-        DockerClient dockerClient = getDockerClient(host);
-        dockerClient.pullImageCmd(imageTag).withAuthConfig(authConfig).exec(new PullImageResultCallback()).awaitSuccess();
+        DockerClient dockerClient = clientPool.acquire(host);
+        try {
+            dockerClient.pullImageCmd(imageTag).withAuthConfig(authConfig).exec(new PullImageResultCallback()).awaitSuccess();
+        } finally {
+            clientPool.release(dockerClient);
+        }
     }
 
     /**
@@ -73,8 +92,12 @@ public class DockerUtils implements Serializable {
      * @return
      */
     public static String getParentId(String digest, String host) {
-        DockerClient dockerClient = getDockerClient(host);
-        return dockerClient.inspectImageCmd(digest).exec().getParent();
+        DockerClient dockerClient = clientPool.acquire(host);
+        try {
+            return dockerClient.inspectImageCmd(digest).exec().getParent();
+        } finally {
+            clientPool.release(dockerClient);
+        }
     }
 
     /**
@@ -217,6 +240,26 @@ public class DockerUtils implements Serializable {
         return imageName + "/" + imageVersion;
     }
 
+    /**
+     * Parse imageTag and get the host of the registry it is pushed to.
+     * example: url:8081/image:version to url
+     * Returns null if the image does not specify a registry.
+     *
+     * @param imageTag
+     * @return
+     */
+    public static String getImageRegistryHost(String imageTag) {
+        int indexOfFirstSlash = imageTag.indexOf("/");
+        if (indexOfFirstSlash < 0) {
+            return null;
+        }
+        String registry = imageTag.substring(0, indexOfFirstSlash);
+        if (!registry.contains(".") && !registry.contains(":") && !registry.equals("localhost")) {
+            return null;
+        }
+        return StringUtils.substringBefore(registry, ":");
+    }
+
     public static Boolean isImageVersioned(String imageTag) {
         int indexOfFirstSlash = imageTag.indexOf("/");
         int indexOfLastColon = imageTag.lastIndexOf(":");
@@ -283,15 +326,4 @@ public class DockerUtils implements Serializable {
         }
         return layersNum;
     }
-
-    private static DockerClient getDockerClient(String host) {
-        if (StringUtils.isEmpty(host)) {
-            return DockerClientBuilder.getInstance().build();
-        }
-
-        DockerClientConfig config = DockerClientConfig.createDefaultConfigBuilder()
-                .withDockerHost(host)
-                .build();
-        return DockerClientBuilder.getInstance(config).build();
-    }
 }
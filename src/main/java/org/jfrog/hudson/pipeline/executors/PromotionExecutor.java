@@ -1,20 +1,21 @@
 package org.jfrog.hudson.pipeline.executors;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
-import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jfrog.build.api.builder.PromotionBuilder;
 import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
 import org.jfrog.hudson.ArtifactoryServer;
 import org.jfrog.hudson.CredentialsConfig;
 import org.jfrog.hudson.pipeline.ArtifactoryConfigurator;
 import org.jfrog.hudson.pipeline.types.PromotionConfig;
+import org.jfrog.hudson.release.AsyncPromotion;
 import org.jfrog.hudson.release.PromotionUtils;
 import org.jfrog.hudson.util.CredentialManager;
 
-import java.io.IOException;
 
 /**
  * Created by romang on 6/21/16.
@@ -24,39 +25,66 @@ public class PromotionExecutor {
     private final ArtifactoryServer server;
     private final TaskListener listener;
     private final PromotionConfig promotionConfig;
-    private final StepContext context;
     private Run build;
 
-    public PromotionExecutor(ArtifactoryServer server, Run build, TaskListener listener, StepContext context,
+    public PromotionExecutor(ArtifactoryServer server, Run build, TaskListener listener,
                              PromotionConfig promotionConfig) {
         this.server = server;
         this.build = build;
         this.listener = listener;
-        this.context = context;
         this.promotionConfig = promotionConfig;
     }
 
-    public void execution() throws IOException {
-        ArtifactoryConfigurator configurator = new ArtifactoryConfigurator(server);
-        CredentialsConfig deployerConfig = CredentialManager.getPreferredDeployer(configurator, server);
+    public void execution() throws Exception {
+        CredentialsConfig deployerConfig = getDeployerConfig();
         ArtifactoryBuildInfoClient client = server.createArtifactoryClient(deployerConfig.provideUsername(build.getParent()), deployerConfig.providePassword(build.getParent()),
                 server.createProxyConfiguration(Jenkins.getInstance().proxy));
 
-        PromotionBuilder promotionBuilder = new PromotionBuilder()
+        logInfo();
+
+        boolean status = PromotionUtils.promoteAndCheckResponse(createPromotionBuilder(), client, listener,
+                promotionConfig.getBuildName(), promotionConfig.getBuildNumber());
+        if (!status) {
+            throw new Exception("Build promotion failed");
+        }
+    }
+
+    /**
+     * Start the promotion without waiting for it to complete.
+     *
+     * @return The promotion result, true if the build was promoted
+     */
+    public ListenableFuture<Boolean> executeAsync() {
+        CredentialsConfig deployerConfig = getDeployerConfig();
+        String username = deployerConfig.provideUsername(build.getParent());
+        String password = deployerConfig.providePassword(build.getParent());
+        ArtifactoryBuildInfoClient client = server.createArtifactoryClient(username, password,
+                server.createProxyConfiguration(Jenkins.getInstance().proxy));
+        ArtifactoryDependenciesClient statusClient = null;
+        if (promotionConfig.isFollowStatus()) {
+            statusClient = server.createArtifactoryDependenciesClient(username, password,
+                    server.createProxyConfiguration(Jenkins.getInstance().proxy), listener);
+        }
+
+        logInfo();
+
+        return new AsyncPromotion(createPromotionBuilder(), client, statusClient, listener,
+                promotionConfig.getBuildName(), promotionConfig.getBuildNumber(), server.getUrl()).start();
+    }
+
+    private CredentialsConfig getDeployerConfig() {
+        ArtifactoryConfigurator configurator = new ArtifactoryConfigurator(server);
+        return CredentialManager.getPreferredDeployer(configurator, server);
+    }
+
+    private PromotionBuilder createPromotionBuilder() {
+        return new PromotionBuilder()
                 .status(promotionConfig.getStatus())
                 .comment(promotionConfig.getComment())
                 .targetRepo(promotionConfig.getTargetRepo())
                 .sourceRepo(promotionConfig.getSourceRepo())
                 .dependencies(promotionConfig.isIncludeDependencies())
                 .copy(promotionConfig.isCopy());
-
-        logInfo();
-
-        boolean status = PromotionUtils.promoteAndCheckResponse(promotionBuilder, client, listener,
-                promotionConfig.getBuildName(), promotionConfig.getBuildNumber());
-        if (!status) {
-            context.onFailure(new Exception("Build promotion failed"));
-        }
     }
 
     private void logInfo() {
@@ -246,8 +246,7 @@ public class ArtifactoryGradleBuild extends AbstractStepImpl {
 
         private String createInitScript() throws Exception {
             GradleInitScriptWriter writer = new GradleInitScriptWriter(build, launcher);
-            FilePath initScript = ws.createTextTempFile("init-artifactory", "gradle",
-                    writer.generateInitScript(), false);
+            FilePath initScript = writer.getInitScript();
             String initScriptPath = initScript.getRemote();
             initScriptPath = initScriptPath.replace('\\', '/');
             return initScriptPath;
@@ -7,6 +7,7 @@ import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import org.jenkinsci.plugins.workflow.steps.*;
+import org.jfrog.hudson.pipeline.ArtifactorySynchronousNonBlockingStepExecution;
 import org.jfrog.hudson.pipeline.Utils;
 import org.jfrog.hudson.pipeline.executors.GenericDownloadExecutor;
 import org.jfrog.hudson.pipeline.types.ArtifactoryServer;
@@ -42,7 +43,7 @@ public class DownloadStep extends AbstractStepImpl {
         return server;
     }
 
-    public static class Execution extends AbstractSynchronousStepExecution<BuildInfo> {
+    public static class Execution extends ArtifactorySynchronousNonBlockingStepExecution<BuildInfo> {
         private static final long serialVersionUID = 1L;
         @StepContextParameter
         private transient FilePath ws;
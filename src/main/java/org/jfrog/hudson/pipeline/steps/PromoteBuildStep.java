@@ -1,5 +1,8 @@
 package org.jfrog.hudson.pipeline.steps;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import hudson.Extension;
 import hudson.model.Run;
@@ -7,6 +10,7 @@ import hudson.model.TaskListener;
 import org.apache.commons.cli.MissingArgumentException;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.steps.*;
+import org.jfrog.hudson.pipeline.ArtifactorySynchronousNonBlockingStepExecution;
 import org.jfrog.hudson.pipeline.Utils;
 import org.jfrog.hudson.pipeline.executors.PromotionExecutor;
 import org.jfrog.hudson.pipeline.types.ArtifactoryServer;
@@ -35,7 +39,7 @@ public class PromoteBuildStep extends AbstractStepImpl {
         return promotionConfig;
     }
 
-    public static class Execution extends AbstractSynchronousStepExecution<Boolean> {
+    public static class Execution extends ArtifactorySynchronousNonBlockingStepExecution<Boolean> {
         private static final long serialVersionUID = 1L;
 
         @StepContextParameter
@@ -47,28 +51,62 @@ public class PromoteBuildStep extends AbstractStepImpl {
         @Inject(optional = true)
         private transient PromoteBuildStep step;
 
+        private transient volatile ListenableFuture<Boolean> promotion;
+
         @Override
         protected Boolean run() throws Exception {
             PromotionConfig promotionConfig = step.getPromotionConfig();
 
             if (StringUtils.isEmpty(promotionConfig.getBuildName())) {
-                getContext().onFailure(new MissingArgumentException("Promotion build name is mandatory"));
-                return false;
+                throw new MissingArgumentException("Promotion build name is mandatory");
             }
 
             if (StringUtils.isEmpty(promotionConfig.getBuildNumber())) {
-                getContext().onFailure(new MissingArgumentException("Promotion build number is mandatory"));
-                return false;
+                throw new MissingArgumentException("Promotion build number is mandatory");
             }
 
             if (StringUtils.isEmpty(promotionConfig.getTargetRepo())) {
-                getContext().onFailure(new MissingArgumentException("Promotion target repository is mandatory"));
-                return false;
+                throw new MissingArgumentException("Promotion target repository is mandatory");
             }
 
-            new PromotionExecutor(Utils.prepareArtifactoryServer(null, step.getServer()), build, listener, getContext(), promotionConfig).execution();
+            PromotionExecutor promotionExecutor = new PromotionExecutor(Utils.prepareArtifactoryServer(null, step.getServer()), build, listener, promotionConfig);
+            if (promotionConfig.isAsync()) {
+                // The step thread is released while the promotion runs, the step completes with the promotion
+                completeAsynchronously();
+                final ListenableFuture<Boolean> asyncPromotion = promotionExecutor.executeAsync();
+                promotion = asyncPromotion;
+                Futures.addCallback(asyncPromotion, new FutureCallback<Boolean>() {
+                    public void onSuccess(Boolean promoted) {
+                        if (!markCompleted()) {
+                            return;
+                        }
+                        if (promoted) {
+                            getContext().onSuccess(true);
+                        } else {
+                            getContext().onFailure(new Exception("Build promotion failed"));
+                        }
+                    }
+
+                    public void onFailure(Throwable t) {
+                        // A promotion cancelled by stop() is completed by stop() with its cause
+                        if (!asyncPromotion.isCancelled() && markCompleted()) {
+                            getContext().onFailure(t);
+                        }
+                    }
+                });
+                return true;
+            }
+            promotionExecutor.execution();
             return true;
         }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            if (promotion != null) {
+                promotion.cancel(true);
+            }
+            super.stop(cause);
+        }
     }
 
     @Extension
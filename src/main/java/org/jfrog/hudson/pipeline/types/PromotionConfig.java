@@ -17,6 +17,8 @@ public class PromotionConfig implements Serializable {
     private String comment;
     private boolean includeDependencies;
     private boolean copy;
+    private boolean async;
+    private boolean followStatus;
 
     @Whitelisted
     public String getBuildName() {
@@ -97,4 +99,28 @@ public class PromotionConfig implements Serializable {
     public void setCopy(boolean copy) {
         this.copy = copy;
     }
+
+    @Whitelisted
+    public boolean isAsync() {
+        return async;
+    }
+
+    @Whitelisted
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    @Whitelisted
+    public boolean isFollowStatus() {
+        return followStatus;
+    }
+
+    /**
+     * Only applies to async promotions. If the promotion request fails before Artifactory answers, follow the
+     * promotion through the build promotion statuses instead of failing it.
+     */
+    @Whitelisted
+    public void setFollowStatus(boolean followStatus) {
+        this.followStatus = followStatus;
+    }
 }
@@ -21,12 +21,17 @@ import org.jfrog.hudson.util.CredentialManager;
 import org.jfrog.hudson.util.ExtractorUtils;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
  * Created by romang on 4/26/16.
+ * <p>
+ * Steps of parallel branches update the same build-info from the Artifactory steps thread pool, while the pipeline
+ * program state is serialized on the CPS VM thread. The state is therefore only accessed while holding this object
+ * lock, and its lists are handed out as copies.
  */
 public class BuildInfo implements Serializable {
 
@@ -43,11 +48,26 @@ public class BuildInfo implements Serializable {
 
     private DockerBuildInfoHelper dockerBuildInfoHelper = new DockerBuildInfoHelper(this);
 
+    // Handle to the side file holding the bulky parts of the build-info while externalized.
+    private BuildInfoStore store;
+    private boolean externalized;
+    // Externalized modules and build dependencies, read from the side file once and then kept up to date on append.
+    private transient List<Module> storedModules;
+    private transient List<BuildDependency> storedBuildDependencies;
+
     public BuildInfo(Run build) {
         this.buildName = BuildUniqueIdentifierHelper.getBuildName(build);
         this.buildNumber = BuildUniqueIdentifierHelper.getBuildNumber(build);
         this.startDate = new Date(build.getStartTimeInMillis());
         this.retention = new BuildRetention();
+        this.store = BuildInfoStore.create(build);
+    }
+
+    private BuildInfo(BuildInfo other) {
+        this.buildName = other.buildName;
+        this.buildNumber = other.buildNumber;
+        this.startDate = other.startDate;
+        this.retention = other.retention;
     }
 
     @Whitelisted
@@ -81,34 +101,77 @@ public class BuildInfo implements Serializable {
     }
 
     @Whitelisted
-    public void append(BuildInfo other) {
-        this.modules.addAll(other.modules);
-        this.deployedArtifacts.addAll(other.deployedArtifacts);
-        this.publishedDependencies.addAll(other.publishedDependencies);
-        this.buildDependencies.addAll(other.buildDependencies);
-        this.dockerBuildInfoHelper.append(other.dockerBuildInfoHelper);
-        this.env.append(other.env);
+    public synchronized boolean isExternalized() {
+        return externalized && store != null;
     }
 
-    public void append(Build other) {
+    /**
+     * When externalized, artifacts, dependencies, modules and the captured environment are appended to a side file
+     * in the run directory instead of being kept in this object, which keeps the pipeline program state small.
+     *
+     * @param externalized
+     * @throws IOException
+     */
+    @Whitelisted
+    public synchronized void setExternalized(boolean externalized) throws IOException {
+        if (store == null || externalized == this.externalized) {
+            return;
+        }
+        if (externalized) {
+            store.appendAll(new BuildInfoStore.Contents(deployedArtifacts, publishedDependencies, buildDependencies,
+                    modules, new HashMap<String, String>(), new HashMap<String, String>()));
+            deployedArtifacts.clear();
+            publishedDependencies.clear();
+            buildDependencies.clear();
+            modules.clear();
+            this.externalized = true;
+            env.setStore(store);
+            return;
+        }
+        BuildInfoStore.Contents contents = store.load();
+        deployedArtifacts.addAll(contents.getDeployedArtifacts());
+        publishedDependencies.addAll(contents.getPublishedDependencies());
+        buildDependencies.addAll(contents.getBuildDependencies());
+        modules.addAll(contents.getModules());
+        env.setStore(null);
+        storedModules = null;
+        storedBuildDependencies = null;
+        this.externalized = false;
+        store.delete();
+    }
+
+    @Whitelisted
+    public void append(BuildInfo other) throws IOException {
+        // Read the other build-info before locking this one, so two build-infos appended to each other can't deadlock
+        BuildInfoStore.Contents otherContents = other.getContents();
+        synchronized (this) {
+            appendModules(otherContents.getModules());
+            appendDeployedArtifacts(otherContents.getDeployedArtifacts());
+            appendPublishedDependencies(otherContents.getPublishedDependencies());
+            appendBuildDependencies(otherContents.getBuildDependencies());
+            this.dockerBuildInfoHelper.append(other.dockerBuildInfoHelper);
+        }
+        this.env.append(otherContents.getEnvVars(), otherContents.getSysVars());
+    }
+
+    public void append(Build other) throws IOException {
         Properties properties = other.getProperties();
-        Env otherEnv = new Env();
         if (properties != null) {
+            Map<String, String> otherEnvVars = new HashMap<String, String>();
+            Map<String, String> otherSysVars = new HashMap<String, String>();
             for (String key : properties.stringPropertyNames()) {
                 boolean isEnvVar = StringUtils.startsWith(key, BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX);
                 if (isEnvVar) {
-                    otherEnv.getEnvVars().put(StringUtils.substringAfter(key, BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX), properties.getProperty(key));
+                    otherEnvVars.put(StringUtils.substringAfter(key, BuildInfoProperties.BUILD_INFO_ENVIRONMENT_PREFIX), properties.getProperty(key));
                 } else {
-                    otherEnv.getSysVars().put(key, properties.getProperty(key));
+                    otherSysVars.put(key, properties.getProperty(key));
                 }
             }
-            this.env.append(otherEnv);
+            this.env.append(otherEnvVars, otherSysVars);
         }
-        if (other.getModules() != null) {
-            this.modules.addAll(other.getModules());
-        }
-        if (other.getBuildDependencies() != null) {
-            this.buildDependencies.addAll(other.getBuildDependencies());
+        synchronized (this) {
+            appendModules(other.getModules());
+            appendBuildDependencies(other.getBuildDependencies());
         }
     }
 
@@ -118,12 +181,12 @@ public class BuildInfo implements Serializable {
     }
 
     @Whitelisted
-    public BuildRetention getRetention() {
+    public synchronized BuildRetention getRetention() {
         return retention;
     }
 
     @Whitelisted
-    public void retention(Map<String, Object> retentionArguments) throws Exception {
+    public synchronized void retention(Map<String, Object> retentionArguments) throws Exception {
         Set<String> retentionArgumentsSet = retentionArguments.keySet();
         List<String> keysAsList = Arrays.asList(new String[]{"maxDays", "maxBuilds", "deleteBuildArtifacts", "doNotDiscardBuilds"});
         if (!keysAsList.containsAll(retentionArgumentsSet)) {
@@ -134,39 +197,106 @@ public class BuildInfo implements Serializable {
         this.retention = mapper.convertValue(retentionArguments, BuildRetention.class);
     }
 
-    protected void appendDeployedArtifacts(List<Artifact> artifacts) {
+    protected synchronized void appendDeployedArtifacts(List<Artifact> artifacts) throws IOException {
         if (artifacts == null) {
             return;
         }
+        if (isExternalized()) {
+            store.appendArtifacts(artifacts);
+            return;
+        }
         deployedArtifacts.addAll(artifacts);
     }
 
-    protected void appendBuildDependencies(List<BuildDependency> dependencies) {
+    protected synchronized void appendBuildDependencies(List<BuildDependency> dependencies) throws IOException {
         if (dependencies == null) {
             return;
         }
+        if (isExternalized()) {
+            store.appendBuildDependencies(dependencies);
+            if (storedBuildDependencies != null) {
+                storedBuildDependencies.addAll(dependencies);
+            }
+            return;
+        }
         buildDependencies.addAll(dependencies);
     }
 
-    protected void appendPublishedDependencies(List<Dependency> dependencies) {
+    protected synchronized void appendPublishedDependencies(List<Dependency> dependencies) throws IOException {
         if (dependencies == null) {
             return;
         }
+        if (isExternalized()) {
+            store.appendDependencies(dependencies);
+            return;
+        }
         publishedDependencies.addAll(dependencies);
     }
 
-    protected List<BuildDependency> getBuildDependencies() {
-        return buildDependencies;
+    private synchronized void appendModules(List<Module> otherModules) throws IOException {
+        if (otherModules == null) {
+            return;
+        }
+        if (isExternalized()) {
+            store.appendModules(otherModules);
+            if (storedModules != null) {
+                storedModules.addAll(otherModules);
+            }
+            return;
+        }
+        modules.addAll(otherModules);
     }
 
-    protected Map<String, String> getEnvVars() {
+    protected synchronized List<BuildDependency> getBuildDependencies() throws IOException {
+        if (isExternalized()) {
+            if (storedBuildDependencies == null) {
+                storedBuildDependencies = store.loadBuildDependencies();
+            }
+            return new ArrayList<BuildDependency>(storedBuildDependencies);
+        }
+        return new ArrayList<BuildDependency>(buildDependencies);
+    }
+
+    protected Map<String, String> getEnvVars() throws IOException {
         return env.getEnvVars();
     }
 
-    protected Map<String, String> getSysVars() {
+    protected Map<String, String> getSysVars() throws IOException {
         return env.getSysVars();
     }
 
+    /**
+     * Returns the build-info parts, read from the side file when externalized.
+     *
+     * @return
+     * @throws IOException
+     */
+    private synchronized BuildInfoStore.Contents getContents() throws IOException {
+        if (isExternalized()) {
+            return store.load();
+        }
+        return new BuildInfoStore.Contents(new ArrayList<Artifact>(deployedArtifacts),
+                new ArrayList<Dependency>(publishedDependencies), new ArrayList<BuildDependency>(buildDependencies),
+                new ArrayList<Module>(modules), env.getEnvVars(), env.getSysVars());
+    }
+
+    /**
+     * Creates an in memory copy of an externalized build-info, used for publishing.
+     *
+     * @return
+     * @throws IOException
+     */
+    private BuildInfo materialize() throws IOException {
+        BuildInfoStore.Contents contents = store.load();
+        BuildInfo buildInfo = new BuildInfo(this);
+        buildInfo.deployedArtifacts.addAll(contents.getDeployedArtifacts());
+        buildInfo.publishedDependencies.addAll(contents.getPublishedDependencies());
+        buildInfo.buildDependencies.addAll(contents.getBuildDependencies());
+        buildInfo.modules.addAll(contents.getModules());
+        buildInfo.env.putVars(contents.getEnvVars(), contents.getSysVars());
+        return buildInfo;
+    }
+
     protected BuildInfoDeployer createDeployer(Run build, TaskListener listener, Launcher launcher, ArtifactoryServer server)
             throws InterruptedException, NoSuchAlgorithmException, IOException {
 
@@ -177,13 +307,23 @@ public class BuildInfo implements Serializable {
 
         List<Module> dockerModules = dockerBuildInfoHelper.generateBuildInfoModules(build, listener, config, launcher);
 
-        addDockerBuildInfoModules(dockerModules);
-        addDefaultModuleToModules(buildName);
-        return new BuildInfoDeployer(config, client, build, listener, new BuildInfoAccessor(this));
+        BuildInfoAccessor accessor;
+        synchronized (this) {
+            addDockerBuildInfoModules(dockerModules);
+            if (isExternalized()) {
+                BuildInfo buildInfo = materialize();
+                buildInfo.addDefaultModuleToModules(buildName);
+                accessor = new BuildInfoAccessor(buildInfo);
+            } else {
+                addDefaultModuleToModules(buildName);
+                accessor = new BuildInfoAccessor(this);
+            }
+        }
+        return new BuildInfoDeployer(config, client, build, listener, accessor);
     }
 
-    private void addDockerBuildInfoModules(List<Module> dockerModules) {
-        modules.addAll(dockerModules);
+    private void addDockerBuildInfoModules(List<Module> dockerModules) throws IOException {
+        appendModules(dockerModules);
     }
 
     private void addDefaultModuleToModules(String moduleId) {
@@ -193,8 +333,8 @@ public class BuildInfo implements Serializable {
 
         ModuleBuilder moduleBuilder = new ModuleBuilder()
                 .id(moduleId)
-                .artifacts(deployedArtifacts)
-                .dependencies(publishedDependencies);
+                .artifacts(new ArrayList<Artifact>(deployedArtifacts))
+                .dependencies(new ArrayList<Dependency>(publishedDependencies));
         modules.add(moduleBuilder.build());
     }
 
@@ -202,7 +342,17 @@ public class BuildInfo implements Serializable {
         this.env.setCpsScript(cpsScript);
     }
 
-    public List<Module> getModules() {
-        return modules;
+    public synchronized List<Module> getModules() throws IOException {
+        if (isExternalized()) {
+            if (storedModules == null) {
+                storedModules = store.loadModules();
+            }
+            return new ArrayList<Module>(storedModules);
+        }
+        return new ArrayList<Module>(modules);
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
     }
 }
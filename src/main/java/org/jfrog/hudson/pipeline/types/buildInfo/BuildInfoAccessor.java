@@ -27,19 +27,19 @@ public class BuildInfoAccessor {
         this.buildInfo = buildInfo;
     }
 
-    public void appendPublishedDependencies(List<Dependency> resolvedDependencies) {
+    public void appendPublishedDependencies(List<Dependency> resolvedDependencies) throws IOException {
         this.buildInfo.appendPublishedDependencies(resolvedDependencies);
     }
 
-    public Map<String, String> getEnvVars() {
+    public Map<String, String> getEnvVars() throws IOException {
         return this.buildInfo.getEnvVars();
     }
 
-    public Map<String, String> getSysVars() {
+    public Map<String, String> getSysVars() throws IOException {
         return this.buildInfo.getSysVars();
     }
 
-    public List<BuildDependency> getBuildDependencies() {
+    public List<BuildDependency> getBuildDependencies() throws IOException {
         return this.buildInfo.getBuildDependencies();
     }
 
@@ -66,7 +66,7 @@ public class BuildInfoAccessor {
         }
     }
 
-    public void appendDeployedArtifacts(List<Artifact> artifacts) {
+    public void appendDeployedArtifacts(List<Artifact> artifacts) throws IOException {
         this.buildInfo.appendDeployedArtifacts(artifacts);
     }
 
@@ -75,7 +75,7 @@ public class BuildInfoAccessor {
         return this.buildInfo.createDeployer(build, listener, launcher, server);
     }
 
-    public List<Module> getModules() {
+    public List<Module> getModules() throws IOException {
         return this.buildInfo.getModules();
     }
 }
@@ -0,0 +1,366 @@
+package org.jfrog.hudson.pipeline.types.buildInfo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Striped;
+import hudson.model.Run;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.build.api.Artifact;
+import org.jfrog.build.api.Dependency;
+import org.jfrog.build.api.Module;
+import org.jfrog.build.api.dependency.BuildDependency;
+import org.jfrog.hudson.pipeline.Utils;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Lightweight handle to a build-info side file kept in the run directory.
+ * Only the file path is serialized with the pipeline program state, the bulky build-info parts
+ * (artifacts, dependencies, modules and captured environment) are appended to the file as gzip compressed
+ * JSON lines, one gzip member per append. A failed append is truncated away, and a store left truncated by a crash
+ * is loaded up to its last complete record.
+ */
+public class BuildInfoStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = Logger.getLogger(BuildInfoStore.class.getName());
+
+    static final String STORE_DIR = "artifactory";
+    private static final String ARTIFACT = "artifact";
+    private static final String DEPENDENCY = "dependency";
+    private static final String BUILD_DEPENDENCY = "buildDependency";
+    private static final String MODULE = "module";
+    private static final String ENV_VARS = "env";
+    private static final String SYS_VARS = "sys";
+
+    /**
+     * All pipeline step executions run on the master JVM. Appends coming from parallel branches are serialized per
+     * store file, so builds don't wait on each other's I/O.
+     */
+    private static final Striped<Lock> locks = Striped.lazyWeakLock(256);
+
+    private final String path;
+
+    public BuildInfoStore(String path) {
+        this.path = path;
+    }
+
+    public static BuildInfoStore create(Run build) {
+        File storeDir = new File(build.getRootDir(), STORE_DIR);
+        File storeFile = new File(storeDir, "buildInfo-" + UUID.randomUUID().toString() + ".jsonl.gz");
+        return new BuildInfoStore(storeFile.getPath());
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Delete the side file, used when the build-info is brought back into memory.
+     */
+    public void delete() {
+        Lock lock = locks.get(path);
+        lock.lock();
+        try {
+            File storeFile = new File(path);
+            if (storeFile.exists() && !storeFile.delete()) {
+                storeFile.deleteOnExit();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void appendArtifacts(List<Artifact> artifacts) throws IOException {
+        append(ARTIFACT, artifacts);
+    }
+
+    public void appendDependencies(List<Dependency> dependencies) throws IOException {
+        append(DEPENDENCY, dependencies);
+    }
+
+    public void appendBuildDependencies(List<BuildDependency> buildDependencies) throws IOException {
+        append(BUILD_DEPENDENCY, buildDependencies);
+    }
+
+    public void appendModules(List<Module> modules) throws IOException {
+        append(MODULE, modules);
+    }
+
+    public void appendEnvVars(Map<String, String> envVars) throws IOException {
+        appendVars(ENV_VARS, envVars);
+    }
+
+    public void appendSysVars(Map<String, String> sysVars) throws IOException {
+        appendVars(SYS_VARS, sysVars);
+    }
+
+    public void appendAll(final Contents contents) throws IOException {
+        append(new RecordsWriter() {
+            public void write(Writer writer) throws IOException {
+                writeRecords(writer, ARTIFACT, contents.getDeployedArtifacts());
+                writeRecords(writer, DEPENDENCY, contents.getPublishedDependencies());
+                writeRecords(writer, BUILD_DEPENDENCY, contents.getBuildDependencies());
+                writeRecords(writer, MODULE, contents.getModules());
+                writeVars(writer, ENV_VARS, contents.getEnvVars());
+                writeVars(writer, SYS_VARS, contents.getSysVars());
+            }
+        });
+    }
+
+    /**
+     * Read all the records appended to the side file so far.
+     *
+     * @return the build-info contents, empty if nothing was appended yet.
+     * @throws IOException
+     */
+    public Contents load() throws IOException {
+        return load(null);
+    }
+
+    /**
+     * Read only the modules appended to the side file so far. The other records are skipped without being parsed.
+     */
+    public List<Module> loadModules() throws IOException {
+        return load(MODULE).getModules();
+    }
+
+    /**
+     * Read only the build dependencies appended to the side file so far. The other records are skipped without
+     * being parsed.
+     */
+    public List<BuildDependency> loadBuildDependencies() throws IOException {
+        return load(BUILD_DEPENDENCY).getBuildDependencies();
+    }
+
+    /**
+     * @param type The type of the records to read, all the records if null
+     */
+    private Contents load(String type) throws IOException {
+        Contents contents = new Contents();
+        // The records are written with their type first
+        String typePrefix = type != null ? "{\"t\":\"" + type + "\"" : null;
+        Lock lock = locks.get(path);
+        lock.lock();
+        try {
+            File storeFile = new File(path);
+            if (!storeFile.exists()) {
+                return contents;
+            }
+            ObjectMapper mapper = Utils.mapper();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new BufferedInputStream(new FileInputStream(storeFile))), "UTF-8"));
+            try {
+                String line;
+                while ((line = readLine(reader)) != null) {
+                    if (StringUtils.isBlank(line) || (typePrefix != null && !line.startsWith(typePrefix))) {
+                        continue;
+                    }
+                    JsonNode record;
+                    try {
+                        record = mapper.readTree(line);
+                    } catch (IOException e) {
+                        // Left by an append which failed midway, the records following it are still read
+                        logger.log(Level.WARNING, "Skipping an unreadable build-info record in " + path, e);
+                        continue;
+                    }
+                    readRecord(mapper, record, contents);
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return contents;
+    }
+
+    /**
+     * @return the next line, or null at the end of the file or of its last complete gzip member.
+     */
+    private String readLine(BufferedReader reader) throws IOException {
+        try {
+            return reader.readLine();
+        } catch (EOFException e) {
+            logger.warning("The build-info store " + path + " is truncated, reading the records written before it");
+        } catch (ZipException e) {
+            logger.warning("The build-info store " + path + " is corrupted, reading the records written before it: " +
+                    e.getMessage());
+        }
+        return null;
+    }
+
+    private void readRecord(ObjectMapper mapper, JsonNode record, Contents contents) {
+        String type = record.get("t").asText();
+        JsonNode value = record.get("v");
+        if (ARTIFACT.equals(type)) {
+            contents.getDeployedArtifacts().add(mapper.convertValue(value, Artifact.class));
+        } else if (DEPENDENCY.equals(type)) {
+            contents.getPublishedDependencies().add(mapper.convertValue(value, Dependency.class));
+        } else if (BUILD_DEPENDENCY.equals(type)) {
+            contents.getBuildDependencies().add(mapper.convertValue(value, BuildDependency.class));
+        } else if (MODULE.equals(type)) {
+            contents.getModules().add(mapper.convertValue(value, Module.class));
+        } else if (ENV_VARS.equals(type)) {
+            contents.getEnvVars().put(record.get("k").asText(), value.asText());
+        } else if (SYS_VARS.equals(type)) {
+            contents.getSysVars().put(record.get("k").asText(), value.asText());
+        }
+    }
+
+    private void append(final String type, final List<?> values) throws IOException {
+        if (values == null || values.isEmpty()) {
+            return;
+        }
+        append(new RecordsWriter() {
+            public void write(Writer writer) throws IOException {
+                writeRecords(writer, type, values);
+            }
+        });
+    }
+
+    private void appendVars(final String type, final Map<String, String> vars) throws IOException {
+        if (vars == null || vars.isEmpty()) {
+            return;
+        }
+        append(new RecordsWriter() {
+            public void write(Writer writer) throws IOException {
+                writeVars(writer, type, vars);
+            }
+        });
+    }
+
+    /**
+     * Appends a gzip member with the given records. If writing them fails, the file is truncated back to its
+     * previous length, so the partial member does not hide the members appended after it.
+     */
+    private void append(RecordsWriter records) throws IOException {
+        Lock lock = locks.get(path);
+        lock.lock();
+        try {
+            File storeFile = new File(path);
+            long length = storeFile.length();
+            Writer writer = openWriter();
+            boolean written = false;
+            try {
+                records.write(writer);
+                writer.close();
+                written = true;
+            } finally {
+                IOUtils.closeQuietly(writer);
+                if (!written) {
+                    truncate(storeFile, length);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void truncate(File storeFile, long length) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+            try {
+                file.setLength(length);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed removing a partial append from " + path, e);
+        }
+    }
+
+    private Writer openWriter() throws IOException {
+        File storeFile = new File(path);
+        File parent = storeFile.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create build-info store directory: " + parent.getPath());
+        }
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(storeFile, true)), "UTF-8"));
+    }
+
+    private void writeRecords(Writer writer, String type, List<?> values) throws IOException {
+        ObjectMapper mapper = Utils.mapper();
+        for (Object value : values) {
+            Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("t", type);
+            record.put("v", value);
+            writer.write(mapper.writeValueAsString(record));
+            writer.write('\n');
+        }
+    }
+
+    private void writeVars(Writer writer, String type, Map<String, String> vars) throws IOException {
+        ObjectMapper mapper = Utils.mapper();
+        for (Map.Entry<String, String> entry : vars.entrySet()) {
+            Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("t", type);
+            record.put("k", entry.getKey());
+            record.put("v", entry.getValue());
+            writer.write(mapper.writeValueAsString(record));
+            writer.write('\n');
+        }
+    }
+
+    private interface RecordsWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * In memory view of the build-info parts read from the side file.
+     */
+    public static class Contents {
+        private List<Artifact> deployedArtifacts = new ArrayList<Artifact>();
+        private List<Dependency> publishedDependencies = new ArrayList<Dependency>();
+        private List<BuildDependency> buildDependencies = new ArrayList<BuildDependency>();
+        private List<Module> modules = new ArrayList<Module>();
+        private Map<String, String> envVars = new HashMap<String, String>();
+        private Map<String, String> sysVars = new HashMap<String, String>();
+
+        public Contents() {
+        }
+
+        Contents(List<Artifact> deployedArtifacts, List<Dependency> publishedDependencies,
+                 List<BuildDependency> buildDependencies, List<Module> modules,
+                 Map<String, String> envVars, Map<String, String> sysVars) {
+            this.deployedArtifacts = deployedArtifacts;
+            this.publishedDependencies = publishedDependencies;
+            this.buildDependencies = buildDependencies;
+            this.modules = modules;
+            this.envVars = envVars;
+            this.sysVars = sysVars;
+        }
+
+        public List<Artifact> getDeployedArtifacts() {
+            return deployedArtifacts;
+        }
+
+        public List<Dependency> getPublishedDependencies() {
+            return publishedDependencies;
+        }
+
+        public List<BuildDependency> getBuildDependencies() {
+            return buildDependencies;
+        }
+
+        public List<Module> getModules() {
+            return modules;
+        }
+
+        public Map<String, String> getEnvVars() {
+            return envVars;
+        }
+
+        public Map<String, String> getSysVars() {
+            return sysVars;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import hudson.model.TaskListener;
 import org.jfrog.build.api.Module;
 import org.jfrog.hudson.pipeline.ArtifactoryConfigurator;
 import org.jfrog.hudson.pipeline.docker.DockerImage;
+import org.jfrog.hudson.pipeline.docker.DockerLayersIndex;
 import org.jfrog.hudson.pipeline.docker.utils.DockerAgentUtils;
 
 import java.io.IOException;
@@ -27,16 +28,27 @@ public class DockerBuildInfoHelper implements Serializable {
 
     public List<Module> generateBuildInfoModules(Run build, TaskListener listener, ArtifactoryConfigurator config,
                                                  Launcher launcher) throws IOException, InterruptedException {
-        aggregatedBuildInfoIds.add(buildInfo.hashCode());
+        List<Integer> buildInfoIds;
+        // The ids are serialized with the build-info, so they are only accessed while holding its lock
+        synchronized (buildInfo) {
+            aggregatedBuildInfoIds.add(buildInfo.hashCode());
+            buildInfoIds = new ArrayList<Integer>(aggregatedBuildInfoIds);
+        }
         List<DockerImage> dockerImages = new ArrayList<DockerImage>();
-        for (Integer buildInfoId : aggregatedBuildInfoIds) {
+        for (Integer buildInfoId : buildInfoIds) {
             dockerImages.addAll(DockerAgentUtils.getDockerImagesFromAgent(launcher, buildInfoId));
         }
 
-        String timestamp = Long.toString(buildInfo.getStartDate().getTime());
         ArrayList<Module> modules = new ArrayList<Module>();
+        if (dockerImages.isEmpty()) {
+            return modules;
+        }
+
+        String timestamp = Long.toString(buildInfo.getStartDate().getTime());
+        DockerLayersIndex layersIndex = DockerLayersIndex.create(build, listener, config, dockerImages);
         for (DockerImage dockerImage : dockerImages) {
-            modules.add(dockerImage.generateBuildInfoModule(build, listener, config, buildInfo.getName(), buildInfo.getNumber(), timestamp));
+            modules.add(dockerImage.generateBuildInfoModule(build, listener, config, buildInfo.getName(),
+                    buildInfo.getNumber(), timestamp, layersIndex));
         }
         return modules;
     }
@@ -9,11 +9,16 @@ import org.jfrog.build.extractor.clientConfiguration.IncludeExcludePatterns;
 import org.jfrog.build.extractor.clientConfiguration.PatternMatcher;
 import org.jfrog.hudson.pipeline.Utils;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 
 /**
  * Created by romang on 6/22/16.
+ * <p>
+ * Variables are captured by steps running on the Artifactory steps thread pool, so the maps are only accessed while
+ * holding this object lock and are handed out as copies.
  */
 public class Env implements Serializable {
     private Map<String, String> envVars = new HashMap<String, String>();
@@ -22,6 +27,7 @@ public class Env implements Serializable {
     private boolean capture = false; //By default don't collect
 
     private CpsScript cpsScript;
+    private BuildInfoStore store;
 
     public Env() {
     }
@@ -37,7 +43,8 @@ public class Env implements Serializable {
      */
     public void collectVariables(EnvVars env, Run build, TaskListener listener) throws Exception {
         env.putAll(Utils.extractBuildParameters(build, listener));
-        addAllWithFilter(envVars, env, filter.getPatternFilter());
+        Map<String, String> collectedEnvVars = new HashMap<String, String>();
+        addAllWithFilter(collectedEnvVars, env, filter.getPatternFilter());
 
         Map<String, String> sysEnv = new HashMap<String, String>();
         Properties systemProperties = System.getProperties();
@@ -46,17 +53,74 @@ public class Env implements Serializable {
             String propertyKey = (String) enumeration.nextElement();
             sysEnv.put(propertyKey, systemProperties.getProperty(propertyKey));
         }
-        addAllWithFilter(sysVars, sysEnv, filter.getPatternFilter());
+        Map<String, String> collectedSysVars = new HashMap<String, String>();
+        addAllWithFilter(collectedSysVars, sysEnv, filter.getPatternFilter());
+        putVars(collectedEnvVars, collectedSysVars);
     }
 
     /**
      * Append environment variables and system properties from othre PipelineEvn object
      *
      * @param env
+     * @throws IOException
      */
-    protected void append(Env env) {
-        addAllWithFilter(this.envVars, env.envVars, filter.getPatternFilter());
-        addAllWithFilter(this.sysVars, env.sysVars, filter.getPatternFilter());
+    protected void append(Env env) throws IOException {
+        append(env.getEnvVars(), env.getSysVars());
+    }
+
+    /**
+     * Append environment variables and system properties, excluding the ones matching the filter
+     *
+     * @param envVars
+     * @param sysVars
+     * @throws IOException
+     */
+    protected void append(Map<String, String> envVars, Map<String, String> sysVars) throws IOException {
+        Map<String, String> otherEnvVars = new HashMap<String, String>();
+        Map<String, String> otherSysVars = new HashMap<String, String>();
+        addAllWithFilter(otherEnvVars, envVars, filter.getPatternFilter());
+        addAllWithFilter(otherSysVars, sysVars, filter.getPatternFilter());
+        putVars(otherEnvVars, otherSysVars);
+    }
+
+    /**
+     * Add the variables either to the in memory maps or to the build-info side file when externalized.
+     *
+     * @param newEnvVars
+     * @param newSysVars
+     * @throws IOException
+     */
+    protected synchronized void putVars(Map<String, String> newEnvVars, Map<String, String> newSysVars) throws IOException {
+        if (store != null) {
+            store.appendEnvVars(newEnvVars);
+            store.appendSysVars(newSysVars);
+            return;
+        }
+        envVars.putAll(newEnvVars);
+        sysVars.putAll(newSysVars);
+    }
+
+    /**
+     * Move the captured variables to the given build-info side file, or back into memory when the store is null.
+     *
+     * @param store
+     * @throws IOException
+     */
+    protected synchronized void setStore(BuildInfoStore store) throws IOException {
+        if (this.store == store) {
+            return;
+        }
+        if (store != null) {
+            store.appendEnvVars(envVars);
+            store.appendSysVars(sysVars);
+            envVars.clear();
+            sysVars.clear();
+        } else {
+            BuildInfoStore.Contents contents = this.store.load();
+            envVars.putAll(contents.getEnvVars());
+            sysVars.putAll(contents.getSysVars());
+        }
+        this.store = store;
     }
 
     /**
@@ -79,8 +143,14 @@ public class Env implements Serializable {
     }
 
     @Whitelisted
-    public Map<String, String> getVars() {
+    public synchronized Map<String, String> getVars() throws IOException {
         Map<String, String> vars = new HashMap<String, String>();
+        if (store != null) {
+            BuildInfoStore.Contents contents = store.load();
+            vars.putAll(contents.getEnvVars());
+            vars.putAll(contents.getSysVars());
+            return vars;
+        }
         vars.putAll(envVars);
         vars.putAll(sysVars);
         return vars;
@@ -108,15 +178,25 @@ public class Env implements Serializable {
         return filter;
     }
 
-    protected Map<String, String> getEnvVars() {
-        return envVars;
+    protected synchronized Map<String, String> getEnvVars() throws IOException {
+        if (store != null) {
+            return store.load().getEnvVars();
+        }
+        return new HashMap<String, String>(envVars);
     }
 
-    protected Map<String, String> getSysVars() {
-        return sysVars;
+    protected synchronized Map<String, String> getSysVars() throws IOException {
+        if (store != null) {
+            return store.load().getSysVars();
+        }
+        return new HashMap<String, String>(sysVars);
     }
 
     public void setCpsScript(CpsScript cpsScript) {
         this.cpsScript = cpsScript;
     }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,307 @@
+package org.jfrog.hudson.release;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpResponse;
+import org.jfrog.build.api.builder.PromotionBuilder;
+import org.jfrog.build.api.release.Promotion;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.jfrog.build.client.ArtifactoryHttpClient.encodeUrl;
+
+/**
+ * Build promotion which does not hold the calling thread until Artifactory answers.
+ * The dry run and the promotion requests are sent on a background thread, and the promotion is polled with an
+ * exponential backoff, printing its progress to the console. When a status client is given, a promotion request
+ * failing before Artifactory answers, for example when a promotion of a very large build exceeds the client timeout,
+ * does not fail the promotion: it is followed through the promotion statuses of the build until the new status
+ * shows up.
+ * The clients are shut down once the promotion completes.
+ */
+public class AsyncPromotion {
+    private static final int INITIAL_POLL_INTERVAL_MS =
+            Integer.getInteger(AsyncPromotion.class.getName() + ".initialPollInterval", 1000);
+    private static final int MAX_POLL_INTERVAL_MS =
+            Integer.getInteger(AsyncPromotion.class.getName() + ".maxPollInterval", 30000);
+    private static final int TIMEOUT_MINUTES =
+            Integer.getInteger(AsyncPromotion.class.getName() + ".timeoutMinutes", 180);
+    // Each promotion holds a thread for its promotion request, concurrent promotions beyond this limit are queued
+    private static final int REQUEST_THREADS =
+            Integer.getInteger(AsyncPromotion.class.getName() + ".requestThreads", 10);
+
+    private static ExecutorService requestsExecutor;
+    private static ScheduledExecutorService pollingExecutor;
+
+    private final PromotionBuilder promotionBuilder;
+    private final ArtifactoryBuildInfoClient client;
+    private final ArtifactoryDependenciesClient statusClient;
+    private final TaskListener listener;
+    private final String buildName;
+    private final String buildNumber;
+    private final String buildUrl;
+    private final SettableFuture<Boolean> result = SettableFuture.create();
+
+    private long initialPollInterval = INITIAL_POLL_INTERVAL_MS;
+    private long maxPollInterval = MAX_POLL_INTERVAL_MS;
+    private long timeout = TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES);
+
+    private long started;
+    private int knownStatuses;
+    private boolean requestFailed;
+    private volatile Future<HttpResponse> promotionRequest;
+    private volatile Future<?> nextPoll;
+
+    /**
+     * @param promotionBuilder Promotion to perform
+     * @param client           Client sending the promotion requests
+     * @param statusClient     Client reading the build promotion statuses, used once the promotion request failed.
+     *                         Null to fail the promotion when its request fails.
+     * @param listener         Listener the promotion progress is printed to
+     * @param buildName        Name of the build to promote
+     * @param buildNumber      Number of the build to promote
+     * @param artifactoryUrl   URL of the Artifactory the build is promoted in
+     */
+    public AsyncPromotion(PromotionBuilder promotionBuilder, ArtifactoryBuildInfoClient client,
+                          ArtifactoryDependenciesClient statusClient, TaskListener listener,
+                          String buildName, String buildNumber, String artifactoryUrl) {
+        this.promotionBuilder = promotionBuilder;
+        this.client = client;
+        this.statusClient = statusClient;
+        this.listener = listener;
+        this.buildName = buildName;
+        this.buildNumber = buildNumber;
+        this.buildUrl = StringUtils.removeEnd(artifactoryUrl, "/") + "/api/build/" + encodeUrl(buildName) + "/" +
+                encodeUrl(buildNumber);
+    }
+
+    /**
+     * Start the promotion.
+     *
+     * @return The promotion result, true if the build was promoted. Cancelling it stops following the promotion,
+     * it does not roll back a promotion already submitted to Artifactory.
+     */
+    public ListenableFuture<Boolean> start() {
+        result.addListener(new Runnable() {
+            public void run() {
+                if (result.isCancelled()) {
+                    cancelPending();
+                }
+                client.shutdown();
+                if (statusClient != null) {
+                    statusClient.shutdown();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        getRequestsExecutor().submit(new Runnable() {
+            public void run() {
+                try {
+                    submit();
+                } catch (Throwable e) {
+                    result.setException(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    private void submit() throws IOException {
+        promotionBuilder.dryRun(true);
+        listener.getLogger().println("Performing dry run promotion (no changes are made during dry run) ...");
+        HttpResponse dryResponse = client.stageBuild(buildName, buildNumber, promotionBuilder.build());
+        if (!PromotionUtils.checkSuccess(dryResponse, true, true, listener)) {
+            result.set(false);
+            return;
+        }
+        knownStatuses = -1;
+        if (statusClient != null) {
+            try {
+                knownStatuses = getStatuses().size();
+            } catch (IOException e) {
+                // Not fatal, the promotion just can not be followed if its request fails
+                listener.getLogger().println("Failed reading the build promotion statuses: " + e.getMessage());
+            }
+        }
+        if (result.isDone()) {
+            return;
+        }
+        listener.getLogger().println("Dry run finished successfully.\nPerforming promotion ...");
+        started = System.currentTimeMillis();
+        final Promotion promotion = promotionBuilder.dryRun(false).build();
+        promotionRequest = getRequestsExecutor().submit(new Callable<HttpResponse>() {
+            public HttpResponse call() throws IOException {
+                return client.stageBuild(buildName, buildNumber, promotion);
+            }
+        });
+        schedulePoll(initialPollInterval);
+    }
+
+    private void schedulePoll(final long delay) {
+        if (result.isDone()) {
+            return;
+        }
+        nextPoll = getPollingExecutor().schedule(new Runnable() {
+            public void run() {
+                try {
+                    if (!poll()) {
+                        schedulePoll(nextPollInterval(delay, maxPollInterval));
+                    }
+                } catch (Throwable e) {
+                    result.setException(e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The interval before the poll following a poll scheduled with the given interval
+     */
+    static long nextPollInterval(long interval, long maxPollInterval) {
+        return Math.min(interval * 2, maxPollInterval);
+    }
+
+    /**
+     * Override the polling intervals and the timeout, in milliseconds.
+     */
+    void setPolling(long initialPollInterval, long maxPollInterval, long timeout) {
+        this.initialPollInterval = initialPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return true once the promotion result is known
+     */
+    private boolean poll() throws InterruptedException {
+        if (result.isDone()) {
+            return true;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        long elapsedSeconds = TimeUnit.MILLISECONDS.toSeconds(elapsed);
+        if (!promotionRequest.isDone()) {
+            listener.getLogger().println("Promotion in progress (" + elapsedSeconds + " seconds) ...");
+            return false;
+        }
+        try {
+            if (PromotionUtils.checkSuccess(promotionRequest.get(), false, true, listener)) {
+                listener.getLogger().println("Promotion completed successfully!");
+                result.set(true);
+            } else {
+                result.set(false);
+            }
+            return true;
+        } catch (ExecutionException e) {
+            // The request failed, but the promotion may still be running in Artifactory
+            if (!(e.getCause() instanceof IOException)) {
+                result.setException(e.getCause());
+                return true;
+            }
+            if (!requestFailed) {
+                requestFailed = true;
+                listener.getLogger().println("Promotion request failed: " + e.getCause().getMessage());
+            }
+        }
+        if (statusClient == null) {
+            listener.error("Promotion failed. View Artifactory logs for more details.");
+            result.set(false);
+            return true;
+        }
+        Promotion promotion = promotionBuilder.build();
+        if (StringUtils.isBlank(promotion.getStatus()) || knownStatuses < 0) {
+            listener.error("The promotion can not be followed through the build promotion statuses. " +
+                    "View Artifactory logs for more details.");
+            result.set(false);
+            return true;
+        }
+        if (isPromotionRecorded(promotion)) {
+            listener.getLogger().println("Promotion completed successfully!");
+            result.set(true);
+            return true;
+        }
+        if (elapsed > timeout) {
+            listener.error("Promotion did not complete within " + elapsedSeconds + " seconds.");
+            result.set(false);
+            return true;
+        }
+        listener.getLogger().println("Waiting for Artifactory to record the promotion (" + elapsedSeconds +
+                " seconds) ...");
+        return false;
+    }
+
+    private boolean isPromotionRecorded(Promotion promotion) {
+        JSONArray statuses;
+        try {
+            statuses = getStatuses();
+        } catch (IOException e) {
+            listener.getLogger().println("Failed reading the build promotion statuses: " + e.getMessage());
+            return false;
+        }
+        for (int i = knownStatuses; i < statuses.size(); i++) {
+            JSONObject status = statuses.getJSONObject(i);
+            if (promotion.getStatus().equals(status.optString("status")) &&
+                    StringUtils.equals(promotion.getTargetRepo(), status.optString("repository", null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private JSONArray getStatuses() throws IOException {
+        HttpResponse response = statusClient.downloadArtifact(buildUrl);
+        InputStream content = response.getEntity().getContent();
+        try {
+            JSONObject buildInfo = JSONObject.fromObject(IOUtils.toString(content, "UTF-8")).getJSONObject("buildInfo");
+            JSONArray statuses = buildInfo.optJSONArray("statuses");
+            return statuses != null ? statuses : new JSONArray();
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+    }
+
+    private void cancelPending() {
+        Future<?> poll = nextPoll;
+        if (poll != null) {
+            poll.cancel(false);
+        }
+        Future<HttpResponse> request = promotionRequest;
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    private static synchronized ExecutorService getRequestsExecutor() {
+        if (requestsExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(REQUEST_THREADS, REQUEST_THREADS, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            requestsExecutor = executor;
+        }
+        return requestsExecutor;
+    }
+
+    private static synchronized ScheduledExecutorService getPollingExecutor() {
+        if (pollingExecutor == null) {
+            pollingExecutor = Executors.newScheduledThreadPool(1, new DaemonThreadFactory());
+        }
+        return pollingExecutor;
+    }
+}
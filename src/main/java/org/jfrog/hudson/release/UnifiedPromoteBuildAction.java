@@ -56,6 +56,10 @@ public class UnifiedPromoteBuildAction<C extends BuildInfoAwareConfigurator & De
     private boolean includeDependencies;
     private PluginSettings promotionPlugin;
     private String defaultPromotionRepositoryKey;
+    // The last completed promotion. TaskThread forgets it once it completes, but its log is only kept while it is
+    // referenced.
+    private transient PromoteWorkerThread completedPromotion;
+    private transient boolean completedPromotionDisplayed;
 
     public UnifiedPromoteBuildAction(AbstractBuild build, C configurator) {
         this.build = build;
@@ -247,8 +251,27 @@ public class UnifiedPromoteBuildAction<C extends BuildInfoAwareConfigurator & De
         return build.getACL();
     }
 
+    /**
+     * The log of a completed promotion is kept until it is displayed once, so a user redirected to the progress page
+     * after the promotion already completed still gets its log. The form is displayed on the next visit.
+     */
     private synchronized String chooseAction() {
-        return workerThread == null ? "form.jelly" : "progress.jelly";
+        if (workerThread != null) {
+            return "progress.jelly";
+        }
+        if (completedPromotion != null) {
+            if (!completedPromotionDisplayed) {
+                completedPromotionDisplayed = true;
+                return "progress.jelly";
+            }
+            completedPromotion = null;
+        }
+        return "form.jelly";
+    }
+
+    private synchronized void promotionCompleted(PromoteWorkerThread promotion) {
+        completedPromotion = promotion;
+        completedPromotionDisplayed = false;
     }
 
     /**
@@ -271,7 +294,6 @@ public class UnifiedPromoteBuildAction<C extends BuildInfoAwareConfigurator & De
         protected void perform(TaskListener listener) {
             ArtifactoryBuildInfoClient client = null;
             try {
-                long started = System.currentTimeMillis();
                 listener.getLogger().println("Promoting build ....");
 
                 client = artifactoryServer.createArtifactoryClient(deployerConfig.provideUsername(build.getProject()), deployerConfig.providePassword(build.getProject()),
@@ -296,19 +318,13 @@ public class UnifiedPromoteBuildAction<C extends BuildInfoAwareConfigurator & De
                 }
 
                 build.save();
-                // if the client gets back to the progress (after the redirect) page when this thread already done,
-                // she will get an error message because the log dies with the thread. So lets delay up to 2 seconds
-                long timeToWait = 2000 - (System.currentTimeMillis() - started);
-                if (timeToWait > 0) {
-                    Thread.sleep(timeToWait);
-                }
-                workerThread = null;
             } catch (Throwable e) {
                 e.printStackTrace(listener.error(e.getMessage()));
             } finally {
                 if (client != null) {
                     client.shutdown();
                 }
+                promotionCompleted(this);
             }
         }
 
@@ -234,15 +234,24 @@ public class MavenReleaseWrapper extends BuildWrapper {
             modulesByName.put(module.getModuleName(), version);
         }
 
-        boolean modified = false;
+        Map<String, ModuleName> modulesByPomPath = Maps.newLinkedHashMap();
         for (MavenModule mavenModule : modules) {
             String relativePath = mavenModule.getRelativePath();
             String pomRelativePath = StringUtils.isBlank(relativePath) ? "pom.xml" : relativePath + "/pom.xml";
             FilePath pomPath = new FilePath(moduleRoot, pomRelativePath);
             debuggingLogger.fine("Changing version of pom: " + pomPath);
             scmCoordinator.edit(pomPath);
-            modified |= pomPath.act(
-                    new PomTransformer(mavenModule.getModuleName(), modulesByName, scmUrl, releaseVersion));
+            modulesByPomPath.put(pomRelativePath, mavenModule.getModuleName());
+        }
+
+        // all the poms are transformed in a single call to the node
+        Map<String, Boolean> modifiedPoms = moduleRoot.act(
+                new PomsTransformer(modulesByPomPath, modulesByName, scmUrl, releaseVersion));
+        boolean modified = false;
+        for (Map.Entry<String, Boolean> modifiedPom : modifiedPoms.entrySet()) {
+            debuggingLogger.fine("Pom " + modifiedPom.getKey() +
+                    (modifiedPom.getValue() ? " was modified" : " was not modified"));
+            modified |= modifiedPom.getValue();
         }
         return modified;
     }
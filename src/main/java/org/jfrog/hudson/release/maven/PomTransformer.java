@@ -69,10 +69,6 @@ public class PomTransformer implements FilePath.FileCallable<Boolean> {
                     entry.getKey().groupId, entry.getKey().artifactId), entry.getValue());
         }
 
-        org.jfrog.build.extractor.maven.transformer.PomTransformer transformer =
-                new org.jfrog.build.extractor.maven.transformer.PomTransformer(current, modules, scmUrl,
-                        failOnSnapshot);
-
-        return transformer.transform(pomFile);
+        return new StreamingPomTransformer(current, modules, scmUrl, failOnSnapshot).transform(pomFile);
     }
 }
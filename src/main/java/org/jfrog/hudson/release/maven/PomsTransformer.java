@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.release.maven;
+
+import com.google.common.collect.Maps;
+import hudson.FilePath;
+import hudson.maven.ModuleName;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rewrites the project versions in all the poms of a multi module project in a single call to the node holding
+ * the workspace. The poms are transformed concurrently.
+ */
+public class PomsTransformer implements FilePath.FileCallable<Map<String, Boolean>> {
+
+    private final Map<String, ModuleName> modulesByPomPath;
+    private final Map<ModuleName, String> versionsByModule;
+    private final String scmUrl;
+    private final boolean failOnSnapshot;
+
+    /**
+     * Transforms the poms of all the modules.
+     *
+     * @param modulesByPomPath Map of pom paths, relative to the transformed directory, to the module of the pom
+     * @param versionsByModule Map of module names to module version
+     * @param scmUrl           Scm url to use if scm element exists in the pom files
+     * @param failOnSnapshot   If true, fail with IllegalStateException if a pom contains snapshot version after the version changes
+     */
+    public PomsTransformer(Map<String, ModuleName> modulesByPomPath, Map<ModuleName, String> versionsByModule,
+            String scmUrl, boolean failOnSnapshot) {
+        this.modulesByPomPath = modulesByPomPath;
+        this.versionsByModule = versionsByModule;
+        this.scmUrl = scmUrl;
+        this.failOnSnapshot = failOnSnapshot;
+    }
+
+    /**
+     * Performs the transformations.
+     *
+     * @param moduleRoot The directory the pom paths are relative to
+     * @return Map of pom paths to true if the pom was modified.
+     */
+    public Map<String, Boolean> invoke(File moduleRoot, VirtualChannel channel)
+            throws IOException, InterruptedException {
+        final Map<org.jfrog.build.extractor.maven.reader.ModuleName, String> modules = Maps.newLinkedHashMap();
+        for (Map.Entry<ModuleName, String> entry : versionsByModule.entrySet()) {
+            modules.put(toReaderModuleName(entry.getKey()), entry.getValue());
+        }
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), modulesByPomPath.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+        try {
+            Map<String, Future<Boolean>> futures = Maps.newLinkedHashMap();
+            for (Map.Entry<String, ModuleName> entry : modulesByPomPath.entrySet()) {
+                final File pomFile = new File(moduleRoot, entry.getKey());
+                final org.jfrog.build.extractor.maven.reader.ModuleName current = toReaderModuleName(entry.getValue());
+                futures.put(entry.getKey(), executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return new StreamingPomTransformer(current, modules, scmUrl, failOnSnapshot)
+                                .transform(pomFile);
+                    }
+                }));
+            }
+
+            Map<String, Boolean> modified = Maps.newLinkedHashMap();
+            for (Map.Entry<String, Future<Boolean>> future : futures.entrySet()) {
+                try {
+                    modified.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("Failed transforming " + future.getKey(), cause);
+                }
+            }
+            return modified;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static org.jfrog.build.extractor.maven.reader.ModuleName toReaderModuleName(ModuleName moduleName) {
+        return new org.jfrog.build.extractor.maven.reader.ModuleName(moduleName.groupId, moduleName.artifactId);
+    }
+}
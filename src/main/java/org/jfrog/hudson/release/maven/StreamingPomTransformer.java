@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2011 JFrog Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfrog.hudson.release.maven;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jfrog.build.extractor.maven.reader.ModuleName;
+import org.jfrog.build.extractor.maven.transformer.SnapshotNotAllowedException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the project, parent and dependency versions and the scm urls of a pom without loading it into a
+ * document tree.
+ * The pom is first read with a StAX stream reader to find the elements to change. It is then copied character by
+ * character, replacing only the text of these elements, so everything else (formatting, comments, line endings)
+ * is kept as is. Both passes use constant memory.
+ */
+public class StreamingPomTransformer {
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private final ModuleName currentModule;
+    private final Map<ModuleName, String> versionsByModule;
+    private final String scmUrl;
+    private final boolean failOnSnapshot;
+
+    /**
+     * @param currentModule    The module of the transformed pom
+     * @param versionsByModule Map of module names to module version
+     * @param scmUrl           Scm url to use if scm element exists in the pom file
+     * @param failOnSnapshot   If true, fail with SnapshotNotAllowedException if the pom contains snapshot version
+     *                         after the version changes
+     */
+    public StreamingPomTransformer(ModuleName currentModule, Map<ModuleName, String> versionsByModule,
+                                   String scmUrl, boolean failOnSnapshot) {
+        this.currentModule = currentModule;
+        this.versionsByModule = versionsByModule;
+        this.scmUrl = scmUrl;
+        this.failOnSnapshot = failOnSnapshot;
+    }
+
+    /**
+     * Performs the transformation.
+     *
+     * @return True if the file was modified.
+     */
+    public boolean transform(File pomFile) throws IOException {
+        Replacements replacements = findReplacements(pomFile);
+        if (replacements.byElementIndex.isEmpty()) {
+            return false;
+        }
+        if (!pomFile.canWrite()) {
+            throw new IOException("File is not writable: " + pomFile.getAbsolutePath());
+        }
+        File tempFile = new File(pomFile.getPath() + ".tmp");
+        // The copier buffers both sides itself
+        Reader reader = new InputStreamReader(new FileInputStream(pomFile), replacements.encoding);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), replacements.encoding);
+        try {
+            new PomCopier(reader, writer, replacements.byElementIndex).copy();
+            writer.close();
+        } finally {
+            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(writer);
+        }
+        if (!tempFile.renameTo(pomFile)) {
+            // Windows does not allow renaming over an existing file
+            if (!pomFile.delete() || !tempFile.renameTo(pomFile)) {
+                tempFile.delete();
+                throw new IOException("Failed writing " + pomFile.getAbsolutePath());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the pom and returns the new text of the elements to change, by the index of their start tag in the pom.
+     */
+    private Replacements findReplacements(File pomFile) throws IOException {
+        Replacements replacements = new Replacements();
+        InputStream stream = new BufferedInputStream(new FileInputStream(pomFile));
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(stream);
+            replacements.encoding = StringUtils.defaultIfEmpty(reader.getEncoding(), "UTF-8");
+            List<String> path = new ArrayList<String>();
+            int elementIndex = -1;
+            Coordinates project = new Coordinates();
+            // The coordinates of the parent or dependency element being read
+            Coordinates current = null;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    elementIndex++;
+                    path.add(reader.getLocalName());
+                    text.setLength(0);
+                    Coordinates holder = getHolder(path, project, current);
+                    if (isPath(path, "project", "parent") || isDependencyPath(path)) {
+                        current = new Coordinates();
+                    } else if (holder != null && "version".equals(reader.getLocalName())) {
+                        holder.setVersionElement(elementIndex);
+                    } else if (isPath(path, "project", "scm", "connection") ||
+                            isPath(path, "project", "scm", "developerConnection")) {
+                        replaceScm(replacements, elementIndex, "scm:svn:" + scmUrl);
+                    } else if (isPath(path, "project", "scm", "url")) {
+                        replaceScm(replacements, elementIndex, scmUrl);
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA ||
+                        event == XMLStreamConstants.SPACE) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    Coordinates holder = getHolder(path, project, current);
+                    if (holder != null) {
+                        holder.set(reader.getLocalName(), text.toString().trim());
+                    }
+                    if (isPath(path, "project", "parent") || isDependencyPath(path)) {
+                        changeDependencyVersion(replacements, current, pomFile);
+                        current = null;
+                    } else if (isPath(path, "project")) {
+                        changeVersion(replacements, project, currentModule, versionsByModule.get(currentModule),
+                                pomFile);
+                    }
+                    path.remove(path.size() - 1);
+                    text.setLength(0);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed parsing " + pomFile.getAbsolutePath() + ": " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Ignore, the stream is closed below
+                }
+            }
+            IOUtils.closeQuietly(stream);
+        }
+        return replacements;
+    }
+
+    /**
+     * Returns the coordinates the element at the given path belongs to, null if it is not a child element of
+     * the project, the parent or a dependency.
+     */
+    private static Coordinates getHolder(List<String> path, Coordinates project, Coordinates current) {
+        List<String> parentPath = path.subList(0, path.size() - 1);
+        if (isPath(parentPath, "project")) {
+            return project;
+        }
+        if (isPath(parentPath, "project", "parent") || isDependencyPath(parentPath)) {
+            return current;
+        }
+        return null;
+    }
+
+    private void changeDependencyVersion(Replacements replacements, Coordinates coordinates, File pomFile) {
+        ModuleName moduleName = new ModuleName(coordinates.groupId, coordinates.artifactId);
+        String version = versionsByModule.get(moduleName);
+        if (version != null) {
+            changeVersion(replacements, coordinates, moduleName, version, pomFile);
+        } else {
+            // Not part of the currently built project
+            verifyNonSnapshotVersion(moduleName, coordinates.version, pomFile);
+        }
+    }
+
+    private void changeVersion(Replacements replacements, Coordinates coordinates, ModuleName moduleName,
+                               String version, File pomFile) {
+        if (version == null || coordinates.versionElementIndex < 0) {
+            return;
+        }
+        verifyNonSnapshotVersion(moduleName, version, pomFile);
+        if (!version.equals(coordinates.version)) {
+            replacements.byElementIndex.put(coordinates.versionElementIndex, version);
+        }
+    }
+
+    private void replaceScm(Replacements replacements, int elementIndex, String value) {
+        if (StringUtils.isNotBlank(scmUrl)) {
+            replacements.byElementIndex.put(elementIndex, value);
+        }
+    }
+
+    private void verifyNonSnapshotVersion(ModuleName moduleName, String version, File pomFile) {
+        if (failOnSnapshot && version != null && version.endsWith("-SNAPSHOT")) {
+            throw new SnapshotNotAllowedException(String.format("Snapshot detected in file '%s': %s:%s",
+                    pomFile.getAbsolutePath(), moduleName, version));
+        }
+    }
+
+    private static boolean isPath(List<String> path, String... expected) {
+        if (path.size() != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (!expected[i].equals(path.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDependencyPath(List<String> path) {
+        return isPath(path, "project", "dependencies", "dependency") ||
+                isPath(path, "project", "dependencyManagement", "dependencies", "dependency");
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Don't validate and don't load external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private static class Replacements {
+        private final Map<Integer, String> byElementIndex = new HashMap<Integer, String>();
+        private String encoding;
+    }
+
+    /**
+     * The group, artifact and version of the project, the parent or a dependency.
+     */
+    private static class Coordinates {
+        private String groupId;
+        private String artifactId;
+        private String version;
+        private int versionElementIndex = -1;
+
+        private void setVersionElement(int elementIndex) {
+            // Like the document based transformer, only the first version element counts
+            if (versionElementIndex < 0) {
+                versionElementIndex = elementIndex;
+            }
+        }
+
+        private void set(String name, String value) {
+            if ("groupId".equals(name) && groupId == null) {
+                groupId = value;
+            } else if ("artifactId".equals(name) && artifactId == null) {
+                artifactId = value;
+            } else if ("version".equals(name) && version == null) {
+                version = value;
+            }
+        }
+    }
+
+    /**
+     * Copies the pom, replacing the content of the elements by the index of their start tag.
+     * The start tags are counted in the same order the stream reader reports them.
+     * The input and output are buffered in plain arrays, since the pom is read and written one character at a time
+     * and the synchronized single character methods of the buffered readers and writers dominate the copy.
+     */
+    private static class PomCopier {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final Reader reader;
+        private final Writer writer;
+        private final Map<Integer, String> replacements;
+        private final char[] input = new char[BUFFER_SIZE];
+        private final char[] output = new char[BUFFER_SIZE];
+        private int inputPosition;
+        private int inputLimit;
+        private int outputPosition;
+        private int elementIndex = -1;
+
+        private PomCopier(Reader reader, Writer writer, Map<Integer, String> replacements) {
+            this.reader = reader;
+            this.writer = writer;
+            this.replacements = replacements;
+        }
+
+        private void copy() throws IOException {
+            while (inputPosition < inputLimit || fill()) {
+                // Copy the text up to the next markup at once
+                int start = inputPosition;
+                while (inputPosition < inputLimit && input[inputPosition] != '<') {
+                    inputPosition++;
+                }
+                write(input, start, inputPosition - start);
+                if (inputPosition < inputLimit) {
+                    inputPosition++;
+                    write('<');
+                    copyMarkup();
+                }
+            }
+            flush();
+        }
+
+        /**
+         * Copies the markup following a '<' and replaces the content of the element if it is a start tag of an
+         * element to change.
+         */
+        private void copyMarkup() throws IOException {
+            int c = read();
+            if (c == '!') {
+                write(c);
+                copyDeclaration();
+            } else if (c == '?') {
+                write(c);
+                copyUntil("?>");
+            } else if (c == '/') {
+                write(c);
+                copyUntil(">");
+            } else {
+                elementIndex++;
+                String replacement = replacements.get(elementIndex);
+                if (replacement == null) {
+                    write(c);
+                    readStartTag(null);
+                    return;
+                }
+                // The start tag of an element to change is buffered, since an empty element tag is rewritten
+                StringBuilder startTag = new StringBuilder().append((char) c);
+                boolean empty = readStartTag(startTag);
+                if (empty) {
+                    // An empty element tag is expanded to hold the new content
+                    startTag.setLength(startTag.length() - 2);
+                    write(StringUtils.stripEnd(startTag.toString(), null));
+                    write('>');
+                    write(escape(replacement));
+                    write("</" + getTagName(startTag) + ">");
+                } else {
+                    write(startTag.toString());
+                    write(escape(replacement));
+                    skipContent();
+                }
+            }
+        }
+
+        private void copyDeclaration() throws IOException {
+            int c = read();
+            write(c);
+            if (c == '-') {
+                // Comment
+                copyUntil("-->");
+            } else if (c == '[') {
+                // CDATA section
+                copyUntil("]]>");
+            } else {
+                // Doctype, which may have an internal subset
+                int depth = 0;
+                while (true) {
+                    c = read();
+                    write(c);
+                    if (c == '[') {
+                        depth++;
+                    } else if (c == ']') {
+                        depth--;
+                    } else if (c == '>' && depth == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads the rest of a start tag into the given buffer, or copies it if the buffer is null.
+         *
+         * @return True if the start tag is an empty element tag.
+         */
+        private boolean readStartTag(StringBuilder startTag) throws IOException {
+            int quote = 0;
+            int previous = 0;
+            while (true) {
+                int c = read();
+                if (startTag != null) {
+                    startTag.append((char) c);
+                } else {
+                    write(c);
+                }
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return previous == '/';
+                }
+                previous = c;
+            }
+        }
+
+        private static String getTagName(CharSequence startTag) {
+            int end = 0;
+            while (end < startTag.length() && !Character.isWhitespace(startTag.charAt(end))) {
+                end++;
+            }
+            return startTag.subSequence(0, end).toString();
+        }
+
+        /**
+         * Skip the original content of the element up to its end tag, which is copied.
+         * Like the document based transformer, the whole content is replaced, including comments, CDATA sections
+         * and processing instructions.
+         */
+        private void skipContent() throws IOException {
+            while (true) {
+                int c = read();
+                if (c != '<') {
+                    continue;
+                }
+                c = read();
+                if (c == '/') {
+                    write("</");
+                    copyUntil(">");
+                    return;
+                } else if (c == '?') {
+                    skipUntil("?>");
+                } else if (c == '!') {
+                    c = read();
+                    skipUntil(c == '-' ? "-->" : "]]>");
+                } else {
+                    throw new IOException("Unexpected child element in the content of element " + elementIndex);
+                }
+            }
+        }
+
+        private void copyUntil(String end) throws IOException {
+            readUntil(end, true);
+        }
+
+        private void skipUntil(String end) throws IOException {
+            readUntil(end, false);
+        }
+
+        /**
+         * Reads up to the given end, of up to three characters.
+         */
+        private void readUntil(String end, boolean copy) throws IOException {
+            int last = end.length() - 1;
+            // The two characters read before the current one
+            int previous = -1;
+            int beforePrevious = -1;
+            while (true) {
+                int c = read();
+                if (copy) {
+                    write(c);
+                }
+                if (c == end.charAt(last) && (last < 1 || previous == end.charAt(last - 1)) &&
+                        (last < 2 || beforePrevious == end.charAt(last - 2))) {
+                    return;
+                }
+                beforePrevious = previous;
+                previous = c;
+            }
+        }
+
+        private int read() throws IOException {
+            if (inputPosition == inputLimit && !fill()) {
+                throw new EOFException("Unexpected end of pom");
+            }
+            return input[inputPosition++];
+        }
+
+        private boolean fill() throws IOException {
+            int read = reader.read(input);
+            if (read <= 0) {
+                return false;
+            }
+            inputPosition = 0;
+            inputLimit = read;
+            return true;
+        }
+
+        private void write(int c) throws IOException {
+            if (outputPosition == output.length) {
+                flush();
+            }
+            output[outputPosition++] = (char) c;
+        }
+
+        private void write(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                write(text.charAt(i));
+            }
+        }
+
+        private void write(char[] chars, int offset, int length) throws IOException {
+            if (length > output.length - outputPosition) {
+                flush();
+                writer.write(chars, offset, length);
+            } else {
+                System.arraycopy(chars, offset, output, outputPosition, length);
+                outputPosition += length;
+            }
+        }
+
+        private void flush() throws IOException {
+            writer.write(output, 0, outputPosition);
+            outputPosition = 0;
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.jfrog.hudson.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import hudson.matrix.Combination;
 import hudson.matrix.MatrixRun;
 import hudson.model.*;
@@ -7,6 +9,9 @@ import org.jfrog.hudson.ArtifactoryRedeployPublisher;
 import org.jfrog.hudson.action.ActionableHelper;
 import org.jfrog.hudson.gradle.ArtifactoryGradleConfigurator;
 
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 
@@ -18,6 +23,15 @@ import java.util.logging.Logger;
 public class BuildUniqueIdentifierHelper {
     private static Logger debuggingLogger = Logger.getLogger(BuildUniqueIdentifierHelper.class.getName());
 
+    /**
+     * Memoized upstream lineage of builds, by build full name and number. Kept in memory only, so upstream builds
+     * of other jobs are not modified, and bounded since only recent builds are resolved repeatedly.
+     */
+    private static final Cache<String, BuildLineage> lineages = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(BuildUniqueIdentifierHelper.class.getName() + ".lineageCacheSize", 10000))
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
     private BuildUniqueIdentifierHelper() {
         // utility class
         throw new IllegalAccessError();
@@ -46,6 +60,85 @@ public class BuildUniqueIdentifierHelper {
         return rootBuild;
     }
 
+    /**
+     * Get the identifier of the root build which triggered the current build, as defined by {@link #getRootBuild}.
+     * The lineage is resolved once and memoized for the current build and for its upstream builds, so repeated calls
+     * and downstream builds sharing the same upstream chain do not walk the chain again.
+     *
+     * @param currentBuild The current build.
+     * @return The upstream identifier of the root build. Null if no upstream or non is found.
+     */
+    public static String getRootBuildIdentifier(AbstractBuild<?, ?> currentBuild) {
+        BuildLineage lineage = getLineage(currentBuild);
+        if (lineage.isResolved()) {
+            return lineage.getRootIdentifier();
+        }
+
+        // Walk up the chain until a build with a resolved lineage
+        LinkedList<AbstractBuild<?, ?>> chain = new LinkedList<AbstractBuild<?, ?>>();
+        String rootIdentifier = null;
+        AbstractBuild<?, ?> build = currentBuild;
+        while (build != null) {
+            BuildLineage buildLineage = getLineage(build);
+            if (buildLineage.isResolved()) {
+                rootIdentifier = buildLineage.getRootIdentifier();
+                break;
+            }
+            if (chain.contains(build)) {
+                break;
+            }
+            chain.addFirst(build);
+            build = getUpstreamBuild(build);
+        }
+
+        // The root of a build is the root of its upstream build, or the build itself if it passes its identifier
+        for (AbstractBuild<?, ?> chainBuild : chain) {
+            if (rootIdentifier == null && isPassIdentifiedDownstream(chainBuild)) {
+                rootIdentifier = getUpstreamIdentifier(chainBuild);
+            }
+            getLineage(chainBuild).resolve(rootIdentifier);
+        }
+        return rootIdentifier;
+    }
+
+    private static BuildLineage getLineage(AbstractBuild<?, ?> build) {
+        String key = build.getParent().getFullName() + "#" + build.getNumber();
+        ConcurrentMap<String, BuildLineage> lineagesMap = lineages.asMap();
+        BuildLineage lineage = lineagesMap.get(key);
+        if (lineage == null) {
+            BuildLineage newLineage = new BuildLineage();
+            lineage = lineagesMap.putIfAbsent(key, newLineage);
+            if (lineage == null) {
+                lineage = newLineage;
+            }
+        }
+        return lineage;
+    }
+
+    /**
+     * Upstream lineage of a build, resolved once by {@link #getRootBuildIdentifier(AbstractBuild)}.
+     */
+    private static class BuildLineage {
+        private volatile boolean resolved;
+        private volatile String rootIdentifier;
+
+        private boolean isResolved() {
+            return resolved;
+        }
+
+        /**
+         * @return The identifier of the root build passing its identifier downstream, null if there is none.
+         */
+        private String getRootIdentifier() {
+            return rootIdentifier;
+        }
+
+        private void resolve(String rootIdentifier) {
+            this.rootIdentifier = rootIdentifier;
+            this.resolved = true;
+        }
+    }
+
     private static AbstractBuild<?, ?> getUpstreamBuild(AbstractBuild<?, ?> build) {
         AbstractBuild<?, ?> upstreamBuild;
         Cause.UpstreamCause cause = ActionableHelper.getUpstreamCause(build);
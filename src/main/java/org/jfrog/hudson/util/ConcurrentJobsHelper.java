@@ -1,17 +1,32 @@
 package org.jfrog.hudson.util;
 
+import hudson.Extension;
+import hudson.matrix.MatrixRun;
 import hudson.model.AbstractBuild;
 import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A helper to manage multi thread jobs such as Multi-Configuration projects.
+ * The information of a build lives until its top level build (the matrix build for matrix configurations) completes,
+ * even if some of its jobs never reach their tear down stage.
  *
  * @author Lior Hasson
  */
 public class ConcurrentJobsHelper {
+    private static final Logger logger = Logger.getLogger(ConcurrentJobsHelper.class.getName());
     private static ConcurrentHashMap<String, ConcurrentBuild> concurrentBuildHandler = new ConcurrentHashMap<String, ConcurrentBuild>();
 
     /**
@@ -52,13 +67,16 @@ public class ConcurrentJobsHelper {
      * and implement the setUp() method with the initialization steps.
      * The setUp() method will be invoked by only one job
      * and in addtion, all jobs will wait till the initialization is finished.
+     * What setUp() changes should be restored by overriding tearDown(), which is registered here so it runs once
+     * the last job reaches its tear down stage, or when the build completes if some jobs never reach it.
      */
     public static abstract class ConcurrentBuildSetupSync {
-        public ConcurrentBuildSetupSync(AbstractBuild build, int totalBuilds) {
+        public ConcurrentBuildSetupSync(AbstractBuild build, int totalBuilds) throws InterruptedException {
             // Add the build to the concurrent map
             ConcurrentBuild newBuild = new ConcurrentBuild(new AtomicInteger(totalBuilds));
             ConcurrentBuild existingBuild = concurrentBuildHandler.putIfAbsent(getConcurrentBuildJobId(build), newBuild);
             existingBuild = existingBuild == null ? newBuild : existingBuild;
+            existingBuild.setUpSync.compareAndSet(null, this);
 
             if (totalBuilds == 1) {
                 setUp();
@@ -73,15 +91,25 @@ public class ConcurrentJobsHelper {
          *
          * @param build The build object.
          */
-        private void setupMultiBuild(ConcurrentBuild build) {
-            // Only one of the matrix jobs should initialize the build:
-            if (!build.isInitialized()) {
-                synchronized (build) {
-                    if (!build.isInitialized()) {
-                        setUp();
-                        build.setAsInitialized();
-                    }
+        private void setupMultiBuild(ConcurrentBuild build) throws InterruptedException {
+            // Only one of the matrix jobs should initialize the build, the others block on its result:
+            FutureTask<Void> setUpTask = new FutureTask<Void>(new Callable<Void>() {
+                public Void call() throws Exception {
+                    setUp();
+                    return null;
                 }
+            });
+            if (build.setUpTask.compareAndSet(null, setUpTask)) {
+                setUpTask.run();
+            }
+            try {
+                build.setUpTask.get().get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException("Build initialization failed", cause);
             }
         }
 
@@ -90,6 +118,13 @@ public class ConcurrentJobsHelper {
          * to be executed by only one of the matrix jobs.
          */
         public abstract void setUp();
+
+        /**
+         * This method can be implemented with the code restoring what setUp() changed. It is invoked once for the
+         * whole build, even if no job reaches its tear down stage.
+         */
+        public void tearDown() {
+        }
     }
 
     /**
@@ -97,19 +132,57 @@ public class ConcurrentJobsHelper {
      * This is important when we want to make sure that only one of the matrix jobs handles the build tear down and that this job is
      * the last job running.
      * The project type that chooses to use this utility class should create an instance of this class
-     * and implement the tearDown() method with the finalization steps.
-     * The tearDown() method will be invoked by only the last job running.
+     * and may override the tearDown() method with finalization steps which depend on the jobs results.
+     * The tearDown() method will be invoked by only the last job running, after the tearDown() of the
+     * {@link ConcurrentBuildSetupSync}.
      */
-    public static abstract class ConcurrentBuildTearDownSync {
+    public static class ConcurrentBuildTearDownSync {
         public ConcurrentBuildTearDownSync(AbstractBuild build, Result buildResult) {
             ConcurrentBuild concurrentBuild = concurrentBuildHandler.get(getConcurrentBuildJobId(build));
+            if (concurrentBuild == null) {
+                // Already torn down, following an aborted job
+                return;
+            }
+            // Jobs which never reach this stage (failed early or filtered out) keep the counter above zero,
+            // in which case the tear down runs when the whole build completes
+            concurrentBuild.pendingTearDown.compareAndSet(null, this);
             if (concurrentBuild.getThreadsCounter().decrementAndGet() == 0 || Result.ABORTED.equals(buildResult)) {
-                tearDown();
+                concurrentBuild.tearDown(this);
                 removeConcurrentBuildJob(build);
             }
         }
 
-        public abstract void tearDown();
+        public void tearDown() {
+        }
+    }
+
+    /**
+     * Releases the information of builds once their top level build completes.
+     */
+    @Extension
+    public static class ConcurrentBuildsCleanupListener extends RunListener<AbstractBuild> {
+        public ConcurrentBuildsCleanupListener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild run, TaskListener listener) {
+            if (run instanceof MatrixRun) {
+                // The information is shared with the other configurations of the matrix build
+                return;
+            }
+            ConcurrentBuild concurrentBuild = getConcurrentBuild(run);
+            if (concurrentBuild == null) {
+                return;
+            }
+            try {
+                concurrentBuild.tearDown(concurrentBuild.pendingTearDown.get());
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed tearing down " + run, e);
+            } finally {
+                removeConcurrentBuildJob(run);
+            }
+        }
     }
 
     /**
@@ -117,7 +190,12 @@ public class ConcurrentJobsHelper {
      */
     public static class ConcurrentBuild {
         private AtomicInteger threadsCounter;
-        private boolean initialized = false;
+        private final AtomicReference<Future<Void>> setUpTask = new AtomicReference<Future<Void>>();
+        private final AtomicReference<ConcurrentBuildSetupSync> setUpSync =
+                new AtomicReference<ConcurrentBuildSetupSync>();
+        private final AtomicReference<ConcurrentBuildTearDownSync> pendingTearDown =
+                new AtomicReference<ConcurrentBuildTearDownSync>();
+        private final AtomicBoolean tornDown = new AtomicBoolean();
         private ConcurrentHashMap<String, String> params = new ConcurrentHashMap<String, String>();
 
         public ConcurrentBuild(AtomicInteger threadsCounter) {
@@ -137,11 +215,28 @@ public class ConcurrentJobsHelper {
         }
 
         public boolean isInitialized() {
-            return initialized;
+            Future<Void> task = setUpTask.get();
+            return task != null && task.isDone();
         }
 
-        public void setAsInitialized() {
-            this.initialized = true;
+        /**
+         * @param tearDownSync The tear down of the jobs, null if none of them reached its tear down stage
+         */
+        private void tearDown(ConcurrentBuildTearDownSync tearDownSync) {
+            // Runs once, either by the last job or when the build completes
+            if (!tornDown.compareAndSet(false, true)) {
+                return;
+            }
+            ConcurrentBuildSetupSync setUp = setUpSync.get();
+            try {
+                if (setUp != null) {
+                    setUp.tearDown();
+                }
+            } finally {
+                if (tearDownSync != null) {
+                    tearDownSync.tearDown();
+                }
+            }
         }
     }
 }
@@ -23,7 +23,7 @@ import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Util;
 import hudson.model.*;
-import hudson.slaves.SlaveComputer;
+import hudson.remoting.VirtualChannel;
 import hudson.util.IOUtils;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
@@ -436,9 +436,8 @@ public class ExtractorUtils {
 
     public static void addBuildRootIfNeeded(AbstractBuild build, ArtifactoryClientConfiguration configuration)
             throws UnsupportedEncodingException {
-        AbstractBuild<?, ?> rootBuild = BuildUniqueIdentifierHelper.getRootBuild(build);
-        if (rootBuild != null) {
-            String identifier = BuildUniqueIdentifierHelper.getUpstreamIdentifier(rootBuild);
+        String identifier = BuildUniqueIdentifierHelper.getRootBuildIdentifier(build);
+        if (identifier != null) {
             configuration.info.setBuildRoot(identifier);
         }
     }
@@ -449,35 +448,41 @@ public class ExtractorUtils {
         configuration.setPropertiesFile(propertiesFile.getRemote());
         env.put("BUILDINFO_PROPFILE", propertiesFile.getRemote());
         env.put(BuildInfoConfigProperties.PROP_PROPS_FILE, propertiesFile.getRemote());
-        // Jenkins prefixes env variables with 'env' but we need it clean..
-        System.setProperty(BuildInfoConfigProperties.PROP_PROPS_FILE, propertiesFile.getRemote());
-        if (!(getComputer(launcher) instanceof SlaveComputer)) {
-            configuration.persistToPropertiesFile();
-        } else {
+        Properties properties = new Properties();
+        properties.putAll(configuration.getAllRootConfig());
+        properties.putAll(configuration.getAllProperties());
+        propertiesFile.act(new PropertiesFileWriter(properties));
+    }
+
+    /**
+     * Writes the extractor configuration on the node the build runs on. The properties are written to a temp file
+     * next to the target which then replaces it, so the extractor never reads a partially written file.
+     */
+    private static class PropertiesFileWriter implements FilePath.FileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Properties properties;
+
+        private PropertiesFileWriter(Properties properties) {
+            this.properties = properties;
+        }
+
+        public Void invoke(File propertiesFile, VirtualChannel channel) throws IOException, InterruptedException {
+            File tempFile = new File(propertiesFile.getPath() + ".tmp");
+            FileOutputStream stream = new FileOutputStream(tempFile);
             try {
-                Properties properties = new Properties();
-                properties.putAll(configuration.getAllRootConfig());
-                properties.putAll(configuration.getAllProperties());
-                File tempFile = File.createTempFile("buildInfo", ".properties");
-                FileOutputStream stream = new FileOutputStream(tempFile);
-                try {
-                    properties.store(stream, "");
-                } finally {
-                    IOUtils.closeQuietly(stream);
+                properties.store(stream, "");
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+            if (!tempFile.renameTo(propertiesFile)) {
+                // Windows does not allow renaming over an existing file
+                if (!propertiesFile.delete() || !tempFile.renameTo(propertiesFile)) {
+                    tempFile.delete();
+                    throw new IOException("Failed writing the build-info properties file: " + propertiesFile.getPath());
                 }
-                propertiesFile.copyFrom(tempFile.toURI().toURL());
-            } catch (Exception e) {
-                throw new RuntimeException(e);
             }
-        }
-    }
-
-    private static Computer getComputer(hudson.Launcher launcher) {
-        Computer computer = Computer.currentComputer();
-        if (computer != null) {
-            return computer;
-        } else {
-            return Utils.getCurrentComputer(launcher);
+            return null;
         }
     }
 
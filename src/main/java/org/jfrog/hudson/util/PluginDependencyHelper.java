@@ -1,59 +1,190 @@
 package org.jfrog.hudson.util;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.Hudson;
 import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
 import org.apache.commons.lang.StringUtils;
 import org.jfrog.hudson.pipeline.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Noam Y. Tenne
  */
 public class PluginDependencyHelper {
+    private static final long PROVISIONED_REVALIDATE_MS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PluginDependencyHelper.class.getName() + ".provisionedRevalidateMinutes", 10));
+
+    /**
+     * Dependency directories already provisioned and the time they were last checked, per agent connection.
+     * A reconnected agent gets a new channel, so its directories are checked again. Since the files may be deleted
+     * from the node meanwhile, they are also checked again once the revalidation interval passed.
+     */
+    private static final Map<VirtualChannel, Map<String, Long>> provisionedDirectories =
+            new WeakHashMap<VirtualChannel, Map<String, Long>>();
+    /**
+     * SHA-1 checksums of the local dependencies by their directory. The plugin directory does not change while
+     * the plugin is loaded, so they are calculated once.
+     */
+    private static final Map<File, Map<String, String>> dependenciesChecksums = new HashMap<File, Map<String, String>>();
+    private static final String DEPENDENCIES_MARK = "ok";
+    private static final String EXCLUDED_DEPENDENCIES = "classes.jar";
 
     public static FilePath getActualDependencyDirectory(File localDependencyFile, FilePath rootPath)
             throws IOException, InterruptedException {
 
         File localDependencyDir = localDependencyFile.getParentFile();
+        String pluginVersion = getPluginVersion();
+
+        FilePath remoteDependencyDir = new FilePath(rootPath, "cache/artifactory-plugin/" + pluginVersion);
+        if (isProvisioned(remoteDependencyDir)) {
+            return remoteDependencyDir;
+        }
+
+        //Check if the dependencies have already been transferred successfully
+        FilePath remoteDependencyMark = new FilePath(remoteDependencyDir, DEPENDENCIES_MARK);
+        if (!remoteDependencyMark.exists()) {
+            // The dependencies are unpacked into a staging directory which is renamed once verified, so executors
+            // provisioning the same node concurrently never use a partially transferred directory
+            FilePath stagingDir = new FilePath(rootPath,
+                    "cache/artifactory-plugin/" + pluginVersion + ".staging-" + UUID.randomUUID().toString());
+            try {
+                stagingDir.mkdirs();
+                // Transfer all the dependencies as a single gzip compressed archive.
+                // Skip classes in this plugin source tree.
+                // TODO: for a proper long term fix, see my comment in JENKINS-18401
+                new FilePath(localDependencyDir).copyRecursiveTo("*", EXCLUDED_DEPENDENCIES, stagingDir);
+                stagingDir.act(new InstallDependenciesCallable(getDependenciesChecksums(localDependencyDir),
+                        remoteDependencyDir.getRemote()));
+            } finally {
+                if (stagingDir.exists()) {
+                    stagingDir.deleteRecursive();
+                }
+            }
+        }
+
+        markProvisioned(remoteDependencyDir);
+        return remoteDependencyDir;
+    }
+
+    /**
+     * @return The version of this plugin, trimmed to be used as a directory name.
+     */
+    public static String getPluginVersion() {
         String pluginVersion = Hudson.getInstance().getPluginManager().getPlugin("artifactory").getVersion();
         if (pluginVersion.contains(" ")) {
             //Trim the plugin version in case we're working on a snapshot version (contains illegal chars)
             pluginVersion = StringUtils.split(pluginVersion, " ")[0];
         }
+        return pluginVersion;
+    }
 
-        FilePath remoteDependencyDir = new FilePath(rootPath, "cache/artifactory-plugin/" + pluginVersion);
-
-        if (!remoteDependencyDir.exists()) {
-            remoteDependencyDir.mkdirs();
+    /**
+     * @return True if the given file was provisioned on its node through the current agent connection and was
+     * checked within the revalidation interval.
+     */
+    public static boolean isProvisioned(FilePath path) {
+        synchronized (provisionedDirectories) {
+            Map<String, Long> paths = provisionedDirectories.get(path.getChannel());
+            Long checked = paths != null ? paths.get(path.getRemote()) : null;
+            return checked != null && System.currentTimeMillis() - checked < PROVISIONED_REVALIDATE_MS;
         }
+    }
 
-        //Check if the dependencies have already been transferred successfully
-        FilePath remoteDependencyMark = new FilePath(remoteDependencyDir, "ok");
-        if (!remoteDependencyMark.exists()) {
+    /**
+     * Remember that the given file is provisioned on its node, for the current agent connection.
+     */
+    public static void markProvisioned(FilePath path) {
+        synchronized (provisionedDirectories) {
+            Map<String, Long> paths = provisionedDirectories.get(path.getChannel());
+            if (paths == null) {
+                paths = new HashMap<String, Long>();
+                provisionedDirectories.put(path.getChannel(), paths);
+            }
+            paths.put(path.getRemote(), System.currentTimeMillis());
+        }
+    }
 
-            File[] localDependencies = localDependencyDir.listFiles();
-            for (File localDependency : localDependencies) {
-                if (localDependency.getName().equals("classes.jar"))
-                    // skip classes in this plugin source tree.
-                    // TODO: for a proper long term fix, see my comment in JENKINS-18401
-                    continue;
-                FilePath remoteDependencyFilePath = new FilePath(remoteDependencyDir, localDependency.getName());
-                if (!remoteDependencyFilePath.exists()) {
-                    FilePath localDependencyFilePath = new FilePath(localDependency);
-                    localDependencyFilePath.copyTo(remoteDependencyFilePath);
+    private static Map<String, String> getDependenciesChecksums(File localDependencyDir) throws IOException {
+        synchronized (dependenciesChecksums) {
+            Map<String, String> checksums = dependenciesChecksums.get(localDependencyDir);
+            if (checksums == null) {
+                checksums = new HashMap<String, String>();
+                File[] localDependencies = localDependencyDir.listFiles();
+                if (localDependencies != null) {
+                    for (File localDependency : localDependencies) {
+                        if (localDependency.isFile() && !localDependency.getName().equals(EXCLUDED_DEPENDENCIES)) {
+                            checksums.put(localDependency.getName(), Files.hash(localDependency, Hashing.sha1()).toString());
+                        }
+                    }
                 }
+                dependenciesChecksums.put(localDependencyDir, checksums);
             }
+            return checksums;
+        }
+    }
+
+    /**
+     * Verifies the dependencies unpacked into the staging directory against their checksums, and renames the
+     * staging directory to the dependencies directory.
+     */
+    private static class InstallDependenciesCallable implements FilePath.FileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> checksums;
+        private final String dependencyDirPath;
 
-            //Mark that all the dependencies have been transferred successfully for future references
-            remoteDependencyMark.touch(System.currentTimeMillis());
+        private InstallDependenciesCallable(Map<String, String> checksums, String dependencyDirPath) {
+            this.checksums = checksums;
+            this.dependencyDirPath = dependencyDirPath;
         }
 
-        return remoteDependencyDir;
+        public Void invoke(File stagingDir, VirtualChannel channel) throws IOException, InterruptedException {
+            for (Map.Entry<String, String> checksum : checksums.entrySet()) {
+                File dependency = new File(stagingDir, checksum.getKey());
+                if (!dependency.isFile()) {
+                    throw new IOException("Missing dependency after transfer: " + dependency.getPath());
+                }
+                String actualChecksum = Files.hash(dependency, Hashing.sha1()).toString();
+                if (!checksum.getValue().equals(actualChecksum)) {
+                    throw new IOException("Checksum mismatch for transferred dependency " + dependency.getPath() +
+                            ": expected " + checksum.getValue() + " but was " + actualChecksum);
+                }
+            }
+            if (!new File(stagingDir, DEPENDENCIES_MARK).createNewFile()) {
+                throw new IOException("Could not mark dependencies directory: " + stagingDir.getPath());
+            }
+
+            File dependencyDir = new File(dependencyDirPath);
+            if (new File(dependencyDir, DEPENDENCIES_MARK).exists()) {
+                // Another executor completed the provisioning first
+                return null;
+            }
+            if (dependencyDir.exists() && !new File(dependencyDir, DEPENDENCIES_MARK).exists()) {
+                // Left over from an interrupted transfer of an older version, never used since it is not marked.
+                // It is moved aside before it is deleted, so a directory installed meanwhile is never half deleted.
+                File leftOver = new File(dependencyDirPath + ".deleted-" + UUID.randomUUID().toString());
+                if (dependencyDir.renameTo(leftOver)) {
+                    Util.deleteRecursive(leftOver);
+                }
+            }
+            if (!stagingDir.renameTo(dependencyDir) && !new File(dependencyDir, DEPENDENCIES_MARK).exists()) {
+                throw new IOException("Could not move " + stagingDir.getPath() + " to " + dependencyDirPath);
+            }
+            return null;
+        }
     }
 
     private static FilePath getRootPath(Run build, Launcher launcher) {
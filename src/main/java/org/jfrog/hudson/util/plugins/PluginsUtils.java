@@ -16,6 +16,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.jfrog.hudson.ArtifactoryBuilder;
+import org.jfrog.hudson.pipeline.docker.proxy.ProxyServerConfig;
 import org.jfrog.hudson.util.Credentials;
 
 import java.io.IOException;
@@ -139,6 +140,14 @@ public class PluginsUtils {
         }
     }
 
+    public static ProxyServerConfig getProxyServerConfig() {
+        try {
+            return getDescriptor().getBuildInfoProxyServerConfig();
+        } catch (IllegalStateException e) {
+            return ProxyServerConfig.defaults();
+        }
+    }
+
     public static boolean isProxyEnabled() {
         try {
             return getDescriptor().isBuildInfoProxyEnabled();
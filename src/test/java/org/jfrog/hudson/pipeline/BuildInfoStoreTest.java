@@ -0,0 +1,74 @@
+package org.jfrog.hudson.pipeline;
+
+import org.jfrog.build.api.Artifact;
+import org.jfrog.build.api.Module;
+import org.jfrog.build.api.builder.ArtifactBuilder;
+import org.jfrog.build.api.builder.ModuleBuilder;
+import org.jfrog.hudson.pipeline.types.buildInfo.BuildInfoStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuildInfoStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndLoad() throws IOException {
+        BuildInfoStore store = new BuildInfoStore(new File(folder.getRoot(), "store/buildInfo.jsonl.gz").getPath());
+        assertTrue("Empty store should load no artifacts", store.load().getDeployedArtifacts().isEmpty());
+
+        List<Artifact> firstBatch = Arrays.asList(new ArtifactBuilder("a.jar").sha1("111").build(),
+                new ArtifactBuilder("b.jar").sha1("222").build());
+        store.appendArtifacts(firstBatch);
+        store.appendArtifacts(Collections.singletonList(new ArtifactBuilder("c.jar").sha1("333").build()));
+        Module module = new ModuleBuilder().id("module").build();
+        store.appendModules(Collections.singletonList(module));
+        store.appendEnvVars(Collections.singletonMap("KEY", "first"));
+        store.appendEnvVars(Collections.singletonMap("KEY", "second"));
+
+        BuildInfoStore.Contents contents = store.load();
+        assertEquals("Artifacts appended in separate calls should all be loaded", 3, contents.getDeployedArtifacts().size());
+        assertEquals("c.jar", contents.getDeployedArtifacts().get(2).getName());
+        assertEquals("333", contents.getDeployedArtifacts().get(2).getSha1());
+        assertEquals("module", contents.getModules().get(0).getId());
+        assertEquals("Later variables should override earlier ones", "second", contents.getEnvVars().get("KEY"));
+
+        assertEquals("Loading only the modules should skip the other records", 1, store.loadModules().size());
+
+        store.delete();
+        assertTrue(store.load().getModules().isEmpty());
+    }
+
+    @Test
+    public void testLoadTruncatedStore() throws IOException {
+        File storeFile = new File(folder.getRoot(), "buildInfo.jsonl.gz");
+        BuildInfoStore store = new BuildInfoStore(storeFile.getPath());
+        store.appendArtifacts(Collections.singletonList(new ArtifactBuilder("a.jar").sha1("111").build()));
+        long length = storeFile.length();
+        store.appendArtifacts(Collections.singletonList(new ArtifactBuilder("b.jar").sha1("222").build()));
+
+        // Simulate a crash in the middle of the second append
+        RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+        try {
+            file.setLength(length + (storeFile.length() - length) / 2);
+        } finally {
+            file.close();
+        }
+
+        List<Artifact> artifacts = store.load().getDeployedArtifacts();
+        assertEquals("Records written before the truncated member should be loaded", 1, artifacts.size());
+        assertEquals("a.jar", artifacts.get(0).getName());
+    }
+}
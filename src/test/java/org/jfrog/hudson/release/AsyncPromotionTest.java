@@ -0,0 +1,155 @@
+package org.jfrog.hudson.release;
+
+import hudson.util.StreamTaskListener;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.jfrog.build.api.builder.PromotionBuilder;
+import org.jfrog.build.api.release.Promotion;
+import org.jfrog.build.api.util.NullLog;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryBuildInfoClient;
+import org.jfrog.build.extractor.clientConfiguration.client.ArtifactoryDependenciesClient;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the {@link AsyncPromotion}.
+ */
+public class AsyncPromotionTest {
+
+    private static final String NO_STATUSES = "{\"buildInfo\":{}}";
+    private static final String RELEASED_STATUS =
+            "{\"buildInfo\":{\"statuses\":[{\"status\":\"Released\",\"repository\":\"libs-release\"}]}}";
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @Test
+    public void pollIntervalBackoff() {
+        assertEquals(2000, AsyncPromotion.nextPollInterval(1000, 30000));
+        assertEquals(16000, AsyncPromotion.nextPollInterval(8000, 30000));
+        assertEquals("The interval should not exceed the maximum", 30000, AsyncPromotion.nextPollInterval(16000, 30000));
+        assertEquals(30000, AsyncPromotion.nextPollInterval(30000, 30000));
+    }
+
+    @Test
+    public void slowPromotionRequest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncPromotion promotion = createPromotion(new PromotionClient(release, false), null);
+
+        Future<Boolean> result = promotion.start();
+        // Let a few polls find the request still in progress
+        Thread.sleep(200);
+        release.countDown();
+
+        assertTrue(result.get(10, TimeUnit.SECONDS));
+        assertTrue(getLog().contains("Promotion in progress"));
+    }
+
+    @Test
+    public void failedRequestWithoutStatusFollowing() throws Exception {
+        AsyncPromotion promotion = createPromotion(new PromotionClient(null, true), null);
+
+        assertFalse("A failed request should fail the promotion unless its status is followed",
+                promotion.start().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedRequestFollowedThroughStatuses() throws Exception {
+        // Artifactory records the promotion after the request timed out
+        AsyncPromotion promotion = createPromotion(new PromotionClient(null, true),
+                new StatusClient(NO_STATUSES, RELEASED_STATUS));
+
+        assertTrue(promotion.start().get(10, TimeUnit.SECONDS));
+        assertTrue(getLog().contains("Promotion request failed"));
+    }
+
+    @Test
+    public void promotionTimeout() throws Exception {
+        AsyncPromotion promotion = createPromotion(new PromotionClient(null, true),
+                new StatusClient(NO_STATUSES, NO_STATUSES));
+
+        assertFalse(promotion.start().get(10, TimeUnit.SECONDS));
+        assertTrue(getLog().contains("Promotion did not complete within"));
+    }
+
+    private AsyncPromotion createPromotion(ArtifactoryBuildInfoClient client, ArtifactoryDependenciesClient statusClient) {
+        PromotionBuilder promotionBuilder = new PromotionBuilder().status("Released").targetRepo("libs-release");
+        AsyncPromotion promotion = new AsyncPromotion(promotionBuilder, client, statusClient,
+                new StreamTaskListener(log), "build", "1", "http://localhost/artifactory");
+        promotion.setPolling(10, 40, 500);
+        return promotion;
+    }
+
+    private String getLog() {
+        return new String(log.toByteArray());
+    }
+
+    private static HttpResponse okResponse() throws IOException {
+        BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        response.setEntity(new StringEntity("{\"messages\":[]}", "UTF-8"));
+        return response;
+    }
+
+    /**
+     * Answers the dry run at once. The promotion request waits for the latch, or fails as if it timed out.
+     */
+    private static class PromotionClient extends ArtifactoryBuildInfoClient {
+        private final CountDownLatch release;
+        private final boolean failPromotion;
+
+        PromotionClient(CountDownLatch release, boolean failPromotion) {
+            super("http://localhost/artifactory", "", "", new NullLog());
+            this.release = release;
+            this.failPromotion = failPromotion;
+        }
+
+        @Override
+        public HttpResponse stageBuild(String buildName, String buildNumber, Promotion promotion) throws IOException {
+            if (!promotion.isDryRun()) {
+                if (failPromotion) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+            return okResponse();
+        }
+    }
+
+    /**
+     * Returns the build statuses read before the promotion, then the statuses read while following it.
+     */
+    private static class StatusClient extends ArtifactoryDependenciesClient {
+        private final String statusesBefore;
+        private final String statusesAfter;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        StatusClient(String statusesBefore, String statusesAfter) {
+            super("http://localhost/artifactory", "", "", new NullLog());
+            this.statusesBefore = statusesBefore;
+            this.statusesAfter = statusesAfter;
+        }
+
+        @Override
+        public HttpResponse downloadArtifact(String downloadUrl) throws IOException {
+            String statuses = reads.getAndIncrement() == 0 ? statusesBefore : statusesAfter;
+            BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+            response.setEntity(new StringEntity(statuses, "UTF-8"));
+            return response;
+        }
+    }
+}
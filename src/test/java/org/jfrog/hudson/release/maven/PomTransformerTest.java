@@ -86,6 +86,45 @@ public class PomTransformerTest {
         assertEquals(expectedStr, pomStr);
     }
 
+    @Test
+    public void transformPreservesFormatting() throws Exception {
+        File pomFile = getResourceAsFile("/poms/formatting/pom.xml");
+        Map<ModuleName, String> modules = Maps.newHashMap();
+        modules.put(new ModuleName("org.jfrog.test", "parent"), "2.2");
+        modules.put(new ModuleName("org.jfrog.test", "one"), "2.2");
+        modules.put(new ModuleName("org.jfrog.test", "two"), "2.2");
+
+        boolean modified = new PomTransformer(new ModuleName("org.jfrog.test", "one"), modules, "", false)
+                .invoke(pomFile, null);
+
+        assertTrue("Pom should have been modified", modified);
+        String pomStr = Files.toString(pomFile, Charset.defaultCharset());
+        String expectedStr = Files.toString(getResourceAsFile("/poms/formatting/pom.expected.xml"),
+                Charset.defaultCharset());
+
+        assertEquals(expectedStr, pomStr);
+    }
+
+    @Test
+    public void transformVersionsWithMarkupOrNoContent() throws Exception {
+        File pomFile = getResourceAsFile("/poms/versionmarkup/pom.xml");
+        Map<ModuleName, String> modules = Maps.newHashMap();
+        modules.put(new ModuleName("org.jfrog.test", "parent"), "2.2");
+        modules.put(new ModuleName("org.jfrog.test", "one"), "2.2");
+        modules.put(new ModuleName("org.jfrog.test", "two"), "2.2");
+        modules.put(new ModuleName("org.jfrog.test", "three"), "2.2");
+
+        boolean modified = new PomTransformer(new ModuleName("org.jfrog.test", "one"), modules, "", false)
+                .invoke(pomFile, null);
+
+        assertTrue("Pom should have been modified", modified);
+        String pomStr = Files.toString(pomFile, Charset.defaultCharset());
+        String expectedStr = Files.toString(getResourceAsFile("/poms/versionmarkup/pom.expected.xml"),
+                Charset.defaultCharset());
+
+        assertEquals(expectedStr, pomStr);
+    }
+
     @Test
     public void snapshotsModule() throws Exception {
         File pomFile = getResourceAsFile("/poms/snapshots/pom-snapshot.xml");